@@ -0,0 +1,101 @@
+package controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import model.Car;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Бенчмарк сериализации Car и List<Car> в форматах ответа CarServlet (JSON, CBOR, Smile)
+// на нескольких размерах списка. Аллокации на операцию показывает профилировщик -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CarSerializationBenchmark {
+
+    private static final String[] BRANDS = {"Mazda", "VW", "Ford", "BMW", "Opel", "Audi", "Kia", "Skoda"};
+
+    // Имя формата: WireFormat виден только в пакете controller, а код JMH генерируется в другом пакете
+    @Param({"JSON", "CBOR", "SMILE"})
+    public String formatName;
+
+    private WireFormat format;
+
+    // Количество автомобилей в списке
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private Car car;
+    private List<Car> cars;
+    private byte[] encodedCars;
+
+    // Так же, как в CarServlet: без сброса буфера после каждого автомобиля
+    private ObjectWriter carWriter;
+
+    @Setup
+    public void setUp() throws IOException {
+        format = WireFormat.valueOf(formatName);
+        Random random = new Random(42);
+        cars = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            cars.add(new Car((long) i, BRANDS[random.nextInt(BRANDS.length)], 1995 + random.nextInt(30),
+                    BigDecimal.valueOf(5_000_00 + random.nextInt(75_000_00), 2), random.nextInt(5)));
+        }
+        car = cars.get(0);
+        encodedCars = format.mapper().writeValueAsBytes(cars);
+        carWriter = format.mapper().writerFor(Car.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // GET /cars?id= - один автомобиль
+    @Benchmark
+    public byte[] writeCar() throws IOException {
+        return format.mapper().writeValueAsBytes(car);
+    }
+
+    // Поиск и постраничное чтение - список целиком
+    @Benchmark
+    public byte[] writeList() throws IOException {
+        return format.mapper().writeValueAsBytes(cars);
+    }
+
+    // GET /cars - потоковая запись по одному автомобилю, как в CarServlet.writeAllCars()
+    @Benchmark
+    public void writeListStreaming() throws IOException {
+        try (JsonGenerator generator = format.mapper().getFactory().createGenerator(OutputStream.nullOutputStream())) {
+            generator.writeStartArray();
+            for (Car value : cars) {
+                carWriter.writeValue(generator, value);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    // Разбор списка, который прислал клиент
+    @Benchmark
+    public List<Car> readList() throws IOException {
+        return format.mapper().readValue(encodedCars, new TypeReference<List<Car>>() {
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package repository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// База данных для бенчмарков.
+// По умолчанию - H2 в памяти в режиме совместимости с PostgreSQL, чтобы бенчмарки
+// запускались без установленного PostgreSQL. Настоящую БД можно указать свойствами JVM:
+//   -Dbench.jdbc.url=jdbc:postgresql://localhost:5433/cars_bench -Dbench.jdbc.user=... -Dbench.jdbc.password=...
+// (используйте отдельную базу: бенчмарк создает в ней таблицу car и пишет в нее)
+final class BenchmarkDatabase {
+
+    private static final String H2_OPTIONS = ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH"
+            + ";NON_KEYWORDS=YEAR,VALUE;DB_CLOSE_DELAY=-1";
+
+    private BenchmarkDatabase() {
+    }
+
+    // Для каждого бэкенда своя база H2, чтобы id из последовательности Hibernate (pooled-lo)
+    // и id из bigserial не пересекались
+    static String url(String name) {
+        return System.getProperty("bench.jdbc.url", "jdbc:h2:mem:" + name + H2_OPTIONS);
+    }
+
+    static String user() {
+        return System.getProperty("bench.jdbc.user", "sa");
+    }
+
+    static String password() {
+        return System.getProperty("bench.jdbc.password", "");
+    }
+
+    static boolean isH2(String url) {
+        return url.startsWith("jdbc:h2:");
+    }
+
+    // Пул для CarRepositoryPostgress и таблица car, если ее еще нет
+    static ConnectionPool pool(String name) {
+        ConnectionPool pool = new ConnectionPool(url(name), user(), password(), 1, 4, 5_000, 300_000, 30_000);
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS car (id bigserial PRIMARY KEY, brand varchar(255), "
+                    + "year integer NOT NULL, price numeric(12, 2), version bigint NOT NULL DEFAULT 0)");
+        } catch (SQLException e) {
+            pool.close();
+            throw new RuntimeException(e);
+        }
+        return pool;
+    }
+
+    // Фабрика сессий с настройками из postgres.cfg.xml, но с адресом БД бенчмарка.
+    // В H2 схему создает сам Hibernate, в PostgreSQL используется существующая таблица
+    static SessionFactory sessionFactory(String name) {
+        String url = url(name);
+        Configuration configuration = new Configuration()
+                .configure("hibernate/postgres.cfg.xml")
+                .setProperty("hibernate.connection.url", url)
+                .setProperty("hibernate.connection.username", user())
+                .setProperty("hibernate.connection.password", password());
+        if (isH2(url)) {
+            configuration
+                    .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                    .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        }
+        return configuration.buildSessionFactory();
+    }
+}
@@ -0,0 +1,181 @@
+package repository;
+
+import model.Car;
+import model.CarOperation;
+import model.CarOperationResult;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static constants.Constants.BATCH_MAX_OPERATIONS;
+
+// Бенчмарк основных операций CarRepository для каждого бэкенда.
+// map, columnar - хранилища в памяти; jdbc - CarRepositoryPostgress; hibernate - CarRepositoryHibernate;
+// stateless - CarRepositoryHibernateStateless.
+// jdbc, hibernate и stateless по умолчанию работают с H2 в режиме PostgreSQL (см. BenchmarkDatabase).
+// Ограничение H2: в нем нет INSERT/UPDATE/DELETE ... RETURNING, поэтому save, update и delete
+// для jdbc (update и delete для stateless) измеряются только на настоящем PostgreSQL (-Dbench.jdbc.url=...).
+// Данные загружаются и удаляются пакетами applyBatch, которые работают и на H2
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CarRepositoryBenchmark {
+
+    private static final String[] BRANDS = {"Mazda", "VW", "Ford", "BMW", "Opel", "Audi", "Kia", "Skoda"};
+
+    @Param({"map", "columnar", "jdbc", "hibernate", "stateless"})
+    public String backend;
+
+    // Сколько автомобилей в хранилище перед замером
+    @Param({"1000", "10000"})
+    public int size;
+
+    private CarRepository repository;
+    private ConnectionPool pool;
+    private SessionFactory sessionFactory;
+
+    // id автомобилей, загруженных перед замером
+    private long[] ids;
+
+    // id автомобилей, созданных бенчмарком save - удаляются после каждой итерации,
+    // чтобы размер хранилища не рос от итерации к итерации
+    private final List<Long> created = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (backend) {
+            case "map":
+                repository = new CarRepositoryMap();
+                break;
+            case "columnar":
+                repository = new CarRepositoryColumnar();
+                break;
+            case "jdbc":
+                pool = BenchmarkDatabase.pool("bench_jdbc");
+                repository = new CarRepositoryPostgress(pool);
+                break;
+            case "hibernate":
+                sessionFactory = BenchmarkDatabase.sessionFactory("bench_hibernate");
+                repository = new CarRepositoryHibernate(sessionFactory);
+                break;
+            case "stateless":
+                sessionFactory = BenchmarkDatabase.sessionFactory("bench_stateless");
+                repository = new CarRepositoryHibernateStateless(sessionFactory);
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный бэкенд: " + backend);
+        }
+
+        ids = new long[size];
+        int loaded = 0;
+        while (loaded < size) {
+            List<CarOperation> operations = new ArrayList<>();
+            for (int i = 0; i < Math.min(BATCH_MAX_OPERATIONS, size - loaded); i++) {
+                operations.add(new CarOperation(CarOperation.CREATE, null, randomCar()));
+            }
+            for (CarOperationResult result : repository.applyBatch(operations)) {
+                ids[loaded++] = result.getId();
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteCreated() {
+        for (Long id : created) {
+            repository.delete(id);
+        }
+        created.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // В настоящей БД убираем за собой загруженные строки
+        if (pool != null || sessionFactory != null) {
+            for (int from = 0; from < ids.length; from += BATCH_MAX_OPERATIONS) {
+                List<CarOperation> operations = new ArrayList<>();
+                for (int i = from; i < Math.min(from + BATCH_MAX_OPERATIONS, ids.length); i++) {
+                    operations.add(new CarOperation(CarOperation.DELETE, ids[i], null));
+                }
+                repository.applyBatch(operations);
+            }
+        }
+        if (pool != null) {
+            pool.close();
+        }
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    @Benchmark
+    public List<Car> getAll() {
+        return repository.getAll();
+    }
+
+    @Benchmark
+    public Car getById() {
+        return repository.getById(randomId());
+    }
+
+    @Benchmark
+    public Car save() {
+        Car car = repository.save(randomCar());
+        created.add(car.getId());
+        return car;
+    }
+
+    @Benchmark
+    public Car update() {
+        Car car = randomCar();
+        car.setId(randomId());
+        return repository.update(car);
+    }
+
+    // Каждому вызову нужен существующий автомобиль, поэтому он создается
+    // в подготовке вызова (Level.Invocation) и в замер не входит
+    @Benchmark
+    public Car delete(DeleteTarget target) {
+        return repository.delete(target.id);
+    }
+
+    @State(Scope.Thread)
+    public static class DeleteTarget {
+        long id;
+
+        @Setup(Level.Invocation)
+        public void create(CarRepositoryBenchmark benchmark) {
+            id = benchmark.repository.save(randomCar()).getId();
+        }
+    }
+
+    private long randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    private static Car randomCar() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new Car(BRANDS[random.nextInt(BRANDS.length)],
+                random.nextInt(1995, 2026),
+                BigDecimal.valueOf(random.nextInt(5_000, 80_000)));
+    }
+}
@@ -0,0 +1,291 @@
+package loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import controller.AppContextListener;
+import loadtest.Workload.Operation;
+import metrics.LatencyHistogram;
+import metrics.OperationMetrics;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Сквозной нагрузочный тест /cars.
+// Запускает приложение (web.xml, слушатель, сервлеты, кэш и метрики) во встроенном Томкате
+// в этом же процессе, загружает в хранилище синтетические данные, затем clients потоков
+// непрерывно отправляют запросы в заданной смеси. После прогрева в течение duration секунд
+// замеряются задержки, по итогам печатаются пропускная способность и перцентили по типам запросов.
+// Метрики сервера (/metrics) сохраняются в target/loadtest-metrics.txt.
+//
+// Параметры (key=value через пробел, все необязательные):
+//   backend=hibernate   map | columnar | jdbc | hibernate | stateless
+//   rows=10000          сколько автомобилей загрузить перед тестом
+//   clients=64          количество одновременных клиентов
+//   warmup=10           прогрев, секунд (не входит в результаты)
+//   duration=30         замер, секунд
+//   mix=getById=60,page=10,find=10,create=10,update=8,delete=2   смесь запросов (см. Workload)
+//   jdbcUrl=, jdbcUser=, jdbcPassword=   настоящая БД вместо H2 (для jdbc, hibernate и stateless)
+//   webapp=src/main/webapp              каталог с WEB-INF/web.xml
+//   seed=42             начальное значение генератора данных
+public final class LoadTest {
+
+    private static final String DEFAULT_MIX = "getById=60,page=10,find=10,create=10,update=8,delete=2";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Workload workload;
+    private final HttpClient http;
+    private final String baseUrl;
+    private final long[] seededIds;
+
+    // Метрики клиента по типам запросов и по всем запросам вместе
+    private final Map<Operation, OperationMetrics> results = new EnumMap<>(Operation.class);
+    private final OperationMetrics total = new OperationMetrics();
+
+    private LoadTest(Workload workload, String baseUrl, long[] seededIds) {
+        this.workload = workload;
+        this.baseUrl = baseUrl;
+        this.seededIds = seededIds;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (Operation operation : Operation.values()) {
+            results.put(operation, new OperationMetrics());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties config = parseArgs(args);
+        String backendName = config.getProperty("backend", "hibernate");
+        int rows = Integer.parseInt(config.getProperty("rows", "10000"));
+        int clients = Integer.parseInt(config.getProperty("clients", "64"));
+        int warmupSec = Integer.parseInt(config.getProperty("warmup", "10"));
+        int durationSec = Integer.parseInt(config.getProperty("duration", "30"));
+        Workload workload = Workload.parse(config.getProperty("mix", DEFAULT_MIX));
+
+        try (LoadTestBackend backend = new LoadTestBackend(backendName, config.getProperty("jdbcUrl"),
+                config.getProperty("jdbcUser"), config.getProperty("jdbcPassword"))) {
+
+            System.out.printf("Загрузка %d автомобилей в %s...%n", rows, backendName);
+            long[] ids = backend.seed(rows, Long.parseLong(config.getProperty("seed", "42")));
+
+            Tomcat tomcat = startTomcat(config.getProperty("webapp", "src/main/webapp"), backend);
+            try {
+                String baseUrl = "http://localhost:" + tomcat.getConnector().getLocalPort();
+                LoadTest test = new LoadTest(workload, baseUrl, ids);
+                System.out.printf("Нагрузка: %d клиентов, прогрев %d с, замер %d с%n", clients, warmupSec, durationSec);
+                test.run(clients, warmupSec, durationSec);
+                test.report(durationSec);
+                test.saveServerMetrics(Path.of("target", "loadtest-metrics.txt"));
+            } finally {
+                tomcat.stop();
+                tomcat.destroy();
+            }
+        }
+    }
+
+    // Приложение разворачивается из каталога webapp, классы берутся из classpath этого процесса.
+    // Хранилище передается слушателю через атрибут CAR_REPOSITORY_BACKEND до его запуска,
+    // поэтому кэш и метрики вокруг хранилища такие же, как в рабочей конфигурации
+    private static Tomcat startTomcat(String webapp, LoadTestBackend backend) throws IOException, LifecycleException {
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("loadtest-tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.setAddDefaultWebXmlToWebapp(false);
+        tomcat.getConnector();
+
+        Context context = tomcat.addWebapp("", new File(webapp).getAbsolutePath());
+        ((StandardJarScanner) context.getJarScanner()).setScanClassPath(false);
+        context.addServletContainerInitializer((classes, servletContext) ->
+                servletContext.setAttribute(AppContextListener.CAR_REPOSITORY_BACKEND, backend.repository()), null);
+
+        tomcat.start();
+        return tomcat;
+    }
+
+    private void run(int clients, int warmupSec, int durationSec) throws InterruptedException {
+        long measureFrom = System.nanoTime() + warmupSec * 1_000_000_000L;
+        long stopAt = measureFrom + durationSec * 1_000_000_000L;
+
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread client = new Thread(() -> {
+                try {
+                    clientLoop(measureFrom, stopAt);
+                } finally {
+                    done.countDown();
+                }
+            }, "loadtest-client-" + i);
+            client.setDaemon(true);
+            client.start();
+        }
+        done.await();
+    }
+
+    // Один клиент: отправляет запросы по одному, пока не истечет время.
+    // Созданные этим клиентом автомобили он же и удаляет, поэтому размер данных остается стабильным,
+    // а GET/PUT обращаются только к загруженным заранее автомобилям и всегда их находят
+    private void clientLoop(long measureFrom, long stopAt) {
+        Deque<Long> created = new ArrayDeque<>();
+        Random random = ThreadLocalRandom.current();
+
+        while (System.nanoTime() < stopAt) {
+            Operation operation = workload.next();
+            if (operation == Operation.DELETE && created.isEmpty()) {
+                operation = Operation.CREATE;
+            }
+            HttpRequest request = request(operation, created, random);
+
+            long start = System.nanoTime();
+            int status;
+            byte[] body = null;
+            try {
+                HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                status = response.statusCode();
+                body = response.body();
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            boolean failed = status < 200 || status >= 400;
+            if (start >= measureFrom) {
+                results.get(operation).record(elapsed, failed);
+                total.record(elapsed, failed);
+            }
+            if (operation == Operation.CREATE && !failed) {
+                rememberCreated(body, created);
+            }
+        }
+
+        // Убираем за собой оставшиеся созданные автомобили
+        for (Long id : created) {
+            try {
+                http.send(HttpRequest.newBuilder(URI.create(baseUrl + "/cars?id=" + id)).DELETE().build(),
+                        HttpResponse.BodyHandlers.discarding());
+            } catch (IOException | InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private HttpRequest request(Operation operation, Deque<Long> created, Random random) {
+        String brand = LoadTestBackend.BRANDS[random.nextInt(LoadTestBackend.BRANDS.length)];
+        switch (operation) {
+            case GET_BY_ID:
+                return get("/cars?id=" + randomSeededId(random));
+            case LIST:
+                return get("/cars");
+            case PAGE:
+                return get("/cars?afterId=" + randomSeededId(random) + "&limit=50");
+            case FIND:
+                return get("/cars?brand=" + brand + "&sort=-price&limit=50");
+            case CREATE:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/cars"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(carJson(brand, random)))
+                        .build();
+            case UPDATE:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/cars?id=" + randomSeededId(random)))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(carJson(brand, random)))
+                        .build();
+            case DELETE:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/cars?id=" + created.pollFirst()))
+                        .DELETE()
+                        .build();
+            default:
+                throw new IllegalStateException("Неизвестный тип запроса: " + operation);
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private long randomSeededId(Random random) {
+        return seededIds[random.nextInt(seededIds.length)];
+    }
+
+    private static String carJson(String brand, Random random) {
+        return "{\"brand\":\"" + brand + "\",\"year\":" + (1995 + random.nextInt(31))
+                + ",\"price\":" + (5_000 + random.nextInt(75_000)) + "}";
+    }
+
+    private static void rememberCreated(byte[] body, Deque<Long> created) {
+        try {
+            created.addLast(MAPPER.readTree(body).get("id").asLong());
+        } catch (IOException | RuntimeException e) {
+            // Ответ без id - удалять нечего
+        }
+    }
+
+    private void report(int durationSec) {
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-10s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "operation", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<Operation, OperationMetrics> entry : results.entrySet()) {
+            if (entry.getValue().getLatency().getCount() > 0) {
+                printRow(entry.getKey().key(), entry.getValue(), durationSec);
+            }
+        }
+        printRow("total", total, durationSec);
+    }
+
+    private static void printRow(String name, OperationMetrics metrics, int durationSec) {
+        LatencyHistogram latency = metrics.getLatency();
+        LatencyHistogram.Snapshot snapshot = latency.snapshot();
+        System.out.printf(Locale.ROOT, "%-10s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                name, latency.getCount(), metrics.getErrors(), (double) latency.getCount() / durationSec,
+                millis(snapshot.valueAtQuantile(0.5)), millis(snapshot.valueAtQuantile(0.9)),
+                millis(snapshot.valueAtQuantile(0.99)), millis(snapshot.valueAtQuantile(0.999)),
+                millis(snapshot.valueAtQuantile(1.0)));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private void saveServerMetrics(Path file) throws IOException, InterruptedException {
+        HttpResponse<String> response = http.send(get("/metrics"), HttpResponse.BodyHandlers.ofString());
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, response.body());
+        System.out.println();
+        System.out.println("Метрики сервера сохранены в " + file);
+    }
+
+    private static Properties parseArgs(String[] args) {
+        Properties config = new Properties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Ожидается параметр вида key=value: " + arg);
+            }
+            config.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return config;
+    }
+}
@@ -0,0 +1,132 @@
+package loadtest;
+
+import model.Car;
+import model.CarOperation;
+import model.CarOperationResult;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import repository.CarRepository;
+import repository.CarRepositoryColumnar;
+import repository.CarRepositoryHibernate;
+import repository.CarRepositoryHibernateStateless;
+import repository.CarRepositoryMap;
+import repository.CarRepositoryPostgress;
+import repository.ConnectionPool;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static constants.Constants.BATCH_MAX_OPERATIONS;
+
+// Хранилище, на котором запускается нагрузочный тест, и синтетические данные в нем.
+// map, columnar - хранилища в памяти; jdbc - CarRepositoryPostgress; hibernate - CarRepositoryHibernate;
+// stateless - CarRepositoryHibernateStateless.
+// jdbc, hibernate и stateless по умолчанию работают с H2 в памяти в режиме PostgreSQL, настоящую БД
+// задают параметрами jdbcUrl, jdbcUser, jdbcPassword (используйте отдельную базу для тестов).
+// В H2 нет INSERT/UPDATE/DELETE ... RETURNING, поэтому для jdbc на H2 запросы POST, PUT и DELETE
+// завершаются ошибкой, а для stateless - PUT и DELETE (загрузка данных идет через applyBatch и работает)
+final class LoadTestBackend implements AutoCloseable {
+
+    static final String[] BRANDS = {"Mazda", "VW", "Ford", "BMW", "Opel", "Audi", "Kia", "Skoda"};
+
+    private static final String H2_URL = "jdbc:h2:mem:loadtest;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE"
+            + ";DEFAULT_NULL_ORDERING=HIGH;NON_KEYWORDS=YEAR,VALUE;DB_CLOSE_DELAY=-1";
+
+    private final CarRepository repository;
+    private ConnectionPool pool;
+    private SessionFactory sessionFactory;
+
+    LoadTestBackend(String backend, String jdbcUrl, String jdbcUser, String jdbcPassword) {
+        String url = jdbcUrl == null ? H2_URL : jdbcUrl;
+        switch (backend) {
+            case "map":
+                repository = new CarRepositoryMap();
+                break;
+            case "columnar":
+                repository = new CarRepositoryColumnar();
+                break;
+            case "jdbc":
+                pool = new ConnectionPool(url, jdbcUser, jdbcPassword, 2, 32, 5_000, 300_000, 30_000);
+                createTable(pool);
+                repository = new CarRepositoryPostgress(pool);
+                break;
+            case "hibernate":
+                sessionFactory = sessionFactory(url, jdbcUser, jdbcPassword);
+                repository = new CarRepositoryHibernate(sessionFactory);
+                break;
+            case "stateless":
+                sessionFactory = sessionFactory(url, jdbcUser, jdbcPassword);
+                repository = new CarRepositoryHibernateStateless(sessionFactory);
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный бэкенд: " + backend);
+        }
+    }
+
+    CarRepository repository() {
+        return repository;
+    }
+
+    // Загружает rows случайных автомобилей пакетами и возвращает их id
+    long[] seed(int rows, long randomSeed) {
+        Random random = new Random(randomSeed);
+        long[] ids = new long[rows];
+        int loaded = 0;
+        while (loaded < rows) {
+            int chunk = Math.min(BATCH_MAX_OPERATIONS, rows - loaded);
+            List<CarOperation> operations = new ArrayList<>(chunk);
+            for (int i = 0; i < chunk; i++) {
+                operations.add(new CarOperation(CarOperation.CREATE, null, randomCar(random)));
+            }
+            for (CarOperationResult result : repository.applyBatch(operations)) {
+                ids[loaded++] = result.getId();
+            }
+        }
+        return ids;
+    }
+
+    static Car randomCar(Random random) {
+        return new Car(BRANDS[random.nextInt(BRANDS.length)],
+                1995 + random.nextInt(31),
+                BigDecimal.valueOf(5_000 + random.nextInt(75_000)));
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.close();
+        }
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    private static void createTable(ConnectionPool pool) {
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS car (id bigserial PRIMARY KEY, brand varchar(255), "
+                    + "year integer NOT NULL, price numeric(12, 2), version bigint NOT NULL DEFAULT 0)");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Настройки из postgres.cfg.xml, но с адресом тестовой БД. В H2 схему создает сам Hibernate
+    private static SessionFactory sessionFactory(String url, String user, String password) {
+        Configuration configuration = new Configuration()
+                .configure("hibernate/postgres.cfg.xml")
+                .setProperty("hibernate.connection.url", url)
+                .setProperty("hibernate.connection.username", user == null ? "sa" : user)
+                .setProperty("hibernate.connection.password", password == null ? "" : password);
+        if (url.startsWith("jdbc:h2:")) {
+            configuration
+                    .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                    .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        }
+        return configuration.buildSessionFactory();
+    }
+}
@@ -0,0 +1,82 @@
+package loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Смесь запросов нагрузочного теста: тип запроса и его доля.
+// Задается строкой вида "getById=60,page=10,find=10,create=10,update=8,delete=2" -
+// веса не обязаны давать в сумме 100
+final class Workload {
+
+    // Типы запросов к /cars
+    enum Operation {
+        GET_BY_ID("getById"),   // GET /cars?id=
+        LIST("list"),           // GET /cars - все автомобили
+        PAGE("page"),           // GET /cars?afterId=&limit=50
+        FIND("find"),           // GET /cars?brand=&sort=-price&limit=50
+        CREATE("create"),       // POST /cars
+        UPDATE("update"),       // PUT /cars?id=
+        DELETE("delete");       // DELETE /cars?id= (удаляются только автомобили, созданные этим клиентом)
+
+        private final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+
+        String key() {
+            return key;
+        }
+    }
+
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+
+    private Workload(Map<Operation, Integer> weights) {
+        operations = weights.keySet().toArray(new Operation[0]);
+        cumulativeWeights = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += weights.get(operations[i]);
+            cumulativeWeights[i] = sum;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("Сумма весов смеси запросов должна быть больше 0");
+        }
+        totalWeight = sum;
+    }
+
+    static Workload parse(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] keyValue = part.trim().split("=");
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Некорректный элемент смеси: " + part);
+            }
+            weights.put(byKey(keyValue[0].trim()), Integer.parseInt(keyValue[1].trim()));
+        }
+        return new Workload(weights);
+    }
+
+    // Случайный тип запроса с учетом весов
+    Operation next() {
+        int point = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (point < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private static Operation byKey(String key) {
+        for (Operation operation : Operation.values()) {
+            if (operation.key().equals(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный тип запроса: " + key);
+    }
+}
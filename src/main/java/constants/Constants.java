@@ -46,4 +46,159 @@ public interface Constants {
     // ⚠️ ВНИМАНИЕ: Хранить пароли в открытом виде в коде - плохая практика!
     // В production лучше использовать переменные окружения или файлы конфигурации
     public static final String DB_PASSWORD = "admin123";
+
+    // ===== Настройки пула соединений (repository.ConnectionPool) =====
+
+    // Минимальное количество открытых соединений, которые пул держит всегда
+    public static final int POOL_MIN_SIZE = 2;
+
+    // Максимальное количество соединений. Больше этого числа к БД не открывается
+    public static final int POOL_MAX_SIZE = 10;
+
+    // Сколько миллисекунд поток ждет свободное соединение, прежде чем получить ошибку
+    public static final long POOL_ACQUIRE_TIMEOUT_MS = 5_000;
+
+    // Через сколько миллисекунд простоя лишнее соединение (сверх минимума) закрывается
+    public static final long POOL_IDLE_TIMEOUT_MS = 300_000;
+
+    // Соединение, которое простаивало дольше этого времени, перед выдачей проверяется isValid()
+    public static final long POOL_VALIDATION_INTERVAL_MS = 30_000;
+
+    // Сколько секунд ждать ответа БД при проверке соединения
+    public static final int POOL_VALIDATION_TIMEOUT_SEC = 2;
+
+    // После скольких выполнений одного и того же запроса на соединении драйвер PostgreSQL
+    // готовит его на сервере (разбор и план запроса переиспользуются). 1 - с первого выполнения,
+    // по умолчанию у драйвера 5. Подготовленные запросы драйвер кэширует на физическом соединении,
+    // а пул держит соединения открытыми, поэтому запрос разбирается один раз на соединение
+    public static final int DB_PREPARE_THRESHOLD = 1;
+
+    // ===== Потоковое чтение таблицы car =====
+
+    // Сколько строк драйвер за один раз забирает из курсора БД при потоковом чтении.
+    // Память на стороне приложения ограничена этим числом строк, а не размером таблицы
+    public static final int STREAM_FETCH_SIZE = 500;
+
+    // ===== Постраничное чтение GET /cars?afterId=&limit= =====
+
+    // Размер страницы, если параметр limit не передан
+    public static final int PAGE_DEFAULT_LIMIT = 50;
+
+    // Максимальный размер страницы, который может запросить клиент
+    public static final int PAGE_MAX_LIMIT = 1000;
+
+    // ===== Пакетные операции POST /cars/batch =====
+
+    // Максимальное количество операций в одном пакетном запросе
+    public static final int BATCH_MAX_OPERATIONS = 1000;
+
+    // Размер JDBC-пакета. Должен совпадать с hibernate.jdbc.batch_size в postgres.cfg.xml
+    public static final int BATCH_JDBC_SIZE = 50;
+
+    // ===== Кэш репозитория (repository.CachingCarRepository) =====
+
+    // Максимальное количество автомобилей в кэше по id. Сверх него вытесняются давно не запрошенные
+    public static final int CACHE_MAX_ENTRIES = 10_000;
+
+    // Сколько миллисекунд запись кэша считается актуальной
+    public static final long CACHE_TTL_MS = 30_000;
+
+    // ===== Асинхронная обработка запросов (controller.CarServlet) =====
+
+    // Сколько миллисекунд ждать завершения асинхронного запроса, после чего клиент получает 503
+    public static final long ASYNC_TIMEOUT_MS = 30_000;
+
+    // Размер пула обычных потоков, если JVM не поддерживает виртуальные потоки (Java < 21).
+    // Проект собирается под Java 17, поэтому на объявленной версии работает именно этот пул.
+    // Запросу к БД нужно соединение пула, так что потоков больше POOL_MAX_SIZE имеет смысл держать
+    // только для запросов без БД (попадания в кэш, снимок списка) - остальные ждут в очереди
+    // исполнителя, а не соединения, и получают 503 по ASYNC_TIMEOUT_MS
+    public static final int ASYNC_FALLBACK_THREADS = POOL_MAX_SIZE * 4;
+
+    // ===== Групповая запись вставок (repository.CarRepositoryPostgress) =====
+
+    // Включена ли групповая фиксация save(): параллельные вставки объединяются в одну транзакцию
+    public static final boolean WRITE_BEHIND_ENABLED = false;
+
+    // Максимальное количество автомобилей в одной групповой вставке
+    public static final int WRITE_BEHIND_BATCH_SIZE = 100;
+
+    // Сколько миллисекунд после первой вставки ждать остальные, прежде чем записать группу
+    public static final long WRITE_BEHIND_LINGER_MS = 5;
+
+    // Максимальная длина очереди вставок. При заполнении save() ждет места в очереди
+    public static final int WRITE_BEHIND_QUEUE_CAPACITY = 10_000;
+
+    // Сколько миллисекунд save() ждет места в очереди и фиксации своей группы, после чего бросает исключение
+    public static final long WRITE_BEHIND_INSERT_TIMEOUT_MS = 30_000;
+
+    // ===== Массовая загрузка POST /cars/import =====
+
+    // Размер части потока, которая читается из запроса и передается в COPY за один раз
+    public static final int IMPORT_CHUNK_BYTES = 64 * 1024;
+
+    // Через сколько загруженных автомобилей сообщать клиенту о ходе загрузки
+    public static final long IMPORT_PROGRESS_ROWS = 100_000;
+
+    // ===== Массовая выгрузка GET /cars/export =====
+
+    // На сколько диапазонов id по умолчанию делить выгрузку (читаются параллельно, 1 - одним запросом)
+    public static final int EXPORT_DEFAULT_PARTITIONS = 4;
+
+    // Максимум диапазонов в одной выгрузке. Каждый занимает соединение пула (POOL_MAX_SIZE)
+    public static final int EXPORT_MAX_PARTITIONS = 8;
+
+    // ===== Hibernate (repository.CarRepositoryHibernate) =====
+
+    // Использовать ли CarRepositoryHibernateStateless: чтение и изменение одиночных автомобилей
+    // через StatelessSession без контекста персистентности и dirty-checking
+    public static final boolean HIBERNATE_STATELESS = false;
+
+    // ===== Лента изменений GET /cars/events (events.CarEventLog) =====
+
+    // Сколько последних событий хранится в памяти. Клиент, отставший больше, чем на это число,
+    // отключается и при переподключении получает событие reset
+    public static final int CAR_EVENTS_CAPACITY = 10_000;
+
+    // Максимум событий, которые отправляются клиенту за одну запись в сокет
+    public static final int CAR_EVENTS_MAX_BATCH = 500;
+
+    // Через сколько миллисекунд без событий отправлять комментарий-пинг, чтобы соединение
+    // не закрыли прокси и чтобы заметить отключившихся клиентов
+    public static final long CAR_EVENTS_HEARTBEAT_MS = 15_000;
+
+    // Максимум одновременно подключенных клиентов ленты. Каждый занимает поток своего исполнителя
+    // (отдельного от исполнителя запросов /cars), следующие получают 503
+    public static final int CAR_EVENTS_MAX_SUBSCRIBERS = 100;
+
+    // ===== Поиск нескольких автомобилей GET /cars?id=1,2,3 =====
+
+    // Максимум id в одном запросе. Все id уходят в БД одним запросом (= ANY(?) или IN)
+    public static final int GET_BY_IDS_MAX = 1000;
+
+    // ===== Объединение одновременных getById (repository.BatchingCarRepository) =====
+
+    // Включено ли объединение: одновременные getById читаются группами одним запросом
+    public static final boolean GET_BY_ID_BATCHING_ENABLED = true;
+
+    // Максимум разных id в одной группе
+    public static final int GET_BY_ID_BATCH_SIZE = 100;
+
+    // Сколько микросекунд после первого id ждать остальные, прежде чем читать группу.
+    // Это добавка к задержке промаха кэша, поэтому окно намного короче, чем у групповой вставки
+    public static final long GET_BY_ID_BATCH_WINDOW_MICROS = 200;
+
+    // Сколько групп читается одновременно. Каждая занимает соединение пула, поэтому не больше его размера
+    public static final int GET_BY_ID_MAX_CONCURRENT_BATCHES = POOL_MAX_SIZE;
+
+    // ===== Снимок списка GET /cars (controller.CarListSnapshot) =====
+
+    // Отдавать ли GET /cars из готовых байт (JSON/CBOR/Smile и их gzip-копий),
+    // пересобирая их только после изменений. Записи этого узла видны сразу, записи других узлов
+    // и прямые изменения в БД - по версии коллекции, не позже чем через CACHE_TTL_MS
+    public static final boolean LIST_SNAPSHOT_ENABLED = true;
+
+    // Максимальный размер несжатого снимка одного формата, байт. Больший список
+    // в памяти не хранится и отдается потоком из репозитория
+    public static final int LIST_SNAPSHOT_MAX_BYTES = 32 * 1024 * 1024;
 }
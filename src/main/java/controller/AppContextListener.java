@@ -0,0 +1,196 @@
+// Пакет, в котором находится класс
+package controller;
+
+import events.CarEventLog;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import metrics.MetricsRegistry;
+import repository.BatchingCarRepository;
+import repository.CachingCarRepository;
+import repository.CarRepository;
+import repository.CarRepositoryHibernate;
+import repository.CarRepositoryHibernateStateless;
+import repository.ConnectionPool;
+import repository.EventPublishingCarRepository;
+import repository.HibernateSessionFactory;
+import repository.MetricsCarRepository;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static constants.Constants.ASYNC_FALLBACK_THREADS;
+import static constants.Constants.CACHE_MAX_ENTRIES;
+import static constants.Constants.CACHE_TTL_MS;
+import static constants.Constants.CAR_EVENTS_CAPACITY;
+import static constants.Constants.CAR_EVENTS_MAX_SUBSCRIBERS;
+import static constants.Constants.GET_BY_ID_BATCHING_ENABLED;
+import static constants.Constants.GET_BY_ID_BATCH_SIZE;
+import static constants.Constants.GET_BY_ID_BATCH_WINDOW_MICROS;
+import static constants.Constants.GET_BY_ID_MAX_CONCURRENT_BATCHES;
+import static constants.Constants.HIBERNATE_STATELESS;
+
+// Слушатель жизненного цикла веб-приложения.
+// Томкат вызывает contextInitialized() при запуске приложения
+// и contextDestroyed() при его остановке (или передеплое)
+public class AppContextListener implements ServletContextListener {
+
+    // Имя атрибута ServletContext, под которым лежит общий для всех сервлетов репозиторий
+    public static final String CAR_REPOSITORY = "carRepository";
+
+    // Имя атрибута ServletContext с хранилищем, которое нужно использовать вместо Hibernate.
+    // Задается встраивающим окружением (например, нагрузочным тестом) до запуска приложения;
+    // кэш и метрики оборачиваются вокруг него так же, как в рабочей конфигурации
+    public static final String CAR_REPOSITORY_BACKEND = "carRepositoryBackend";
+
+    // Имя атрибута ServletContext с исполнителем асинхронных запросов
+    public static final String REQUEST_EXECUTOR = "requestExecutor";
+
+    // Имя атрибута ServletContext с реестром метрик
+    public static final String METRICS_REGISTRY = "metricsRegistry";
+
+    // Имя атрибута ServletContext с лентой изменений автомобилей
+    public static final String CAR_EVENTS = "carEvents";
+
+    // Имя атрибута ServletContext с исполнителем, на котором живут подключения к ленте изменений
+    public static final String CAR_EVENTS_EXECUTOR = "carEventsExecutor";
+
+    // Имя атрибута ServletContext с оберткой, объединяющей getById (останавливается вместе с приложением)
+    public static final String GET_BY_ID_BATCHING = "getByIdBatching";
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // Реестр метрик создается первым: в него регистрируются репозиторий и сервлеты
+        if (sce.getServletContext().getAttribute(METRICS_REGISTRY) == null) {
+            sce.getServletContext().setAttribute(METRICS_REGISTRY, new MetricsRegistry());
+        }
+        MetricsRegistry metricsRegistry = metricsRegistry(sce.getServletContext());
+
+        // Один репозиторий на всё приложение: все сервлеты видят один и тот же кэш,
+        // и запись через любой сервлет сбрасывает его для остальных.
+        // Если атрибут уже задан (например, тестовым окружением), не заменяем его
+        // Лента изменений создается до репозитория: в нее пишет обертка над хранилищем
+        if (sce.getServletContext().getAttribute(CAR_EVENTS) == null) {
+            sce.getServletContext().setAttribute(CAR_EVENTS, new CarEventLog(CAR_EVENTS_CAPACITY));
+        }
+
+        if (sce.getServletContext().getAttribute(CAR_REPOSITORY) == null) {
+            //CarRepository carRepository = new CarRepositoryMap();
+            //CarRepository carRepository = new CarRepositoryColumnar();
+            // Метрики снаружи кэша: замеряется то, что видят сервлеты, включая попадания в кэш
+            CarRepository backend = (CarRepository) sce.getServletContext().getAttribute(CAR_REPOSITORY_BACKEND);
+            if (backend == null) {
+                backend = HIBERNATE_STATELESS ? new CarRepositoryHibernateStateless() : new CarRepositoryHibernate();
+            }
+            // Объединение getById - сразу над хранилищем: в группы попадают только промахи кэша
+            if (GET_BY_ID_BATCHING_ENABLED) {
+                backend = new BatchingCarRepository(backend, GET_BY_ID_BATCH_SIZE, GET_BY_ID_BATCH_WINDOW_MICROS,
+                        GET_BY_ID_MAX_CONCURRENT_BATCHES);
+                sce.getServletContext().setAttribute(GET_BY_ID_BATCHING, backend);
+            }
+            // События пишутся сразу над хранилищем: попадания в кэш изменений не порождают
+            CarRepository carRepository = new MetricsCarRepository(new CachingCarRepository(
+                    new EventPublishingCarRepository(backend, carEvents(sce.getServletContext())),
+                    CACHE_MAX_ENTRIES, CACHE_TTL_MS), metricsRegistry);
+            sce.getServletContext().setAttribute(CAR_REPOSITORY, carRepository);
+        }
+
+        // Исполнитель, на котором сервлеты выполняют блокирующие обращения к репозиторию,
+        // освобождая поток Томката
+        if (sce.getServletContext().getAttribute(REQUEST_EXECUTOR) == null) {
+            sce.getServletContext().setAttribute(REQUEST_EXECUTOR,
+                    newExecutor(ASYNC_FALLBACK_THREADS, "car-request-"));
+        }
+
+        // Подключения к ленте изменений держат поток, пока клиент подключен, - у них свой исполнитель,
+        // чтобы подписчики не занимали потоки запросов /cars
+        if (sce.getServletContext().getAttribute(CAR_EVENTS_EXECUTOR) == null) {
+            sce.getServletContext().setAttribute(CAR_EVENTS_EXECUTOR,
+                    newExecutor(CAR_EVENTS_MAX_SUBSCRIBERS, "car-events-"));
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        // Будим клиентов ленты изменений, чтобы их запросы завершились до остановки исполнителя
+        CarEventLog events = carEvents(sce.getServletContext());
+        if (events != null) {
+            events.close();
+        }
+
+        // Сначала перестаем принимать задачи и даем текущим запросам завершиться
+        shutdown(requestExecutor(sce.getServletContext()));
+        shutdown(carEventsExecutor(sce.getServletContext()));
+
+        // Останавливаем поток объединения getById, пока хранилище еще доступно
+        BatchingCarRepository batching =
+                (BatchingCarRepository) sce.getServletContext().getAttribute(GET_BY_ID_BATCHING);
+        if (batching != null) {
+            batching.close();
+        }
+
+        // Закрываем физические соединения пула, иначе после передеплоя
+        // они останутся открытыми до перезапуска Томката
+        ConnectionPool.closeDefault();
+
+        // Закрываем общую фабрику сессий Hibernate вместе с ее соединениями
+        HibernateSessionFactory.closeDefault();
+    }
+
+    // Общий репозиторий приложения из ServletContext
+    static CarRepository carRepository(ServletContext context) {
+        return (CarRepository) context.getAttribute(CAR_REPOSITORY);
+    }
+
+    // Общий реестр метрик из ServletContext
+    static MetricsRegistry metricsRegistry(ServletContext context) {
+        return (MetricsRegistry) context.getAttribute(METRICS_REGISTRY);
+    }
+
+    // Общая лента изменений автомобилей из ServletContext
+    static CarEventLog carEvents(ServletContext context) {
+        return (CarEventLog) context.getAttribute(CAR_EVENTS);
+    }
+
+    // Общий исполнитель асинхронных запросов из ServletContext
+    static ExecutorService requestExecutor(ServletContext context) {
+        return (ExecutorService) context.getAttribute(REQUEST_EXECUTOR);
+    }
+
+    // Исполнитель подключений к ленте изменений из ServletContext
+    static ExecutorService carEventsExecutor(ServletContext context) {
+        return (ExecutorService) context.getAttribute(CAR_EVENTS_EXECUTOR);
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Виртуальный поток на каждый запрос: поток, ждущий ответа БД, почти не занимает память,
+    // поэтому тысячи одновременных запросов не исчерпывают потоки.
+    // Виртуальные потоки появились в Java 21, а проект собирается под Java 17 (см. pom.xml),
+    // поэтому метод ищем через reflection. На Java 17 используем пул из fallbackThreads обычных потоков:
+    // переход на виртуальные потоки выполнен только наполовину и включается запуском на Java 21
+    private static ExecutorService newExecutor(int fallbackThreads, String threadNamePrefix) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(fallbackThreads, r -> {
+                Thread thread = new Thread(r, threadNamePrefix + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
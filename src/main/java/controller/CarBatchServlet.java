@@ -0,0 +1,92 @@
+// Пакет, в котором находится класс
+package controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import model.CarOperation;
+import model.CarOperationResult;
+import repository.CarRepository;
+
+import java.io.IOException;
+import java.util.List;
+
+import static constants.Constants.BATCH_MAX_OPERATIONS;
+
+// Сервлет для пакетных операций над автомобилями.
+// Вместо десятков отдельных запросов POST/PUT/DELETE клиент отправляет один:
+// POST /cars/batch
+// [
+//   {"op":"create","car":{"brand":"Audi","year":2020,"price":25000}},
+//   {"op":"update","id":3,"car":{"brand":"BMW","year":2021,"price":31000}},
+//   {"op":"delete","id":7}
+// ]
+// Все операции выполняются в одной транзакции, в ответе - результат каждой операции
+public class CarBatchServlet extends HttpServlet {
+
+    // Общий для всех сервлетов репозиторий, создается в AppContextListener
+    private CarRepository carRepository;
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public void init() throws ServletException {
+        carRepository = AppContextListener.carRepository(getServletContext());
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        List<CarOperation> operations;
+        try {
+            operations = mapper.readValue(request.getReader(), new TypeReference<List<CarOperation>>() {
+            });
+            validate(operations);
+        } catch (Exception e) {
+            // Некорректный запрос - в БД ничего не отправляли
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write(CarServlet.errorJson(e.getMessage()));
+            return;
+        }
+
+        try {
+            List<CarOperationResult> results = carRepository.applyBatch(operations);
+            response.getWriter().write(mapper.writeValueAsString(results));
+        } catch (Exception e) {
+            // Транзакция откатилась целиком - ни одна операция пакета не применена
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            response.getWriter().write(CarServlet.errorJson("Пакет отменен: " + e.getMessage()));
+        }
+    }
+
+    // Проверяем весь пакет до обращения к БД, чтобы не открывать транзакцию зря
+    private void validate(List<CarOperation> operations) {
+        if (operations == null || operations.isEmpty()) {
+            throw new IllegalArgumentException("Пакет операций пуст");
+        }
+        if (operations.size() > BATCH_MAX_OPERATIONS) {
+            throw new IllegalArgumentException("В пакете больше " + BATCH_MAX_OPERATIONS + " операций");
+        }
+
+        for (int i = 0; i < operations.size(); i++) {
+            CarOperation operation = operations.get(i);
+            String op = operation.getOp();
+            if (!CarOperation.CREATE.equals(op) && !CarOperation.UPDATE.equals(op) && !CarOperation.DELETE.equals(op)) {
+                throw new IllegalArgumentException("Операция " + i + ": неизвестный тип " + op);
+            }
+            if (!CarOperation.DELETE.equals(op) && operation.getCar() == null) {
+                throw new IllegalArgumentException("Операция " + i + ": не передан car");
+            }
+            if (!CarOperation.CREATE.equals(op) && operation.getId() == null) {
+                throw new IllegalArgumentException("Операция " + i + ": не передан id");
+            }
+        }
+    }
+}
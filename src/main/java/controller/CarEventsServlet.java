@@ -0,0 +1,191 @@
+// Пакет, в котором находится класс
+package controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import events.CarEventLog;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import model.CarEvent;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import static constants.Constants.CAR_EVENTS_HEARTBEAT_MS;
+import static constants.Constants.CAR_EVENTS_MAX_BATCH;
+import static constants.Constants.CAR_EVENTS_MAX_SUBSCRIBERS;
+
+// Сервлет ленты изменений автомобилей: GET /cars/events (Server-Sent Events).
+// Вместо того чтобы периодически перечитывать GET /cars, клиент держит одно соединение
+// и получает события created, updated, deleted по мере изменений:
+// id: 42
+// event: updated
+// data: {"seq":42,"type":"updated","id":5,"car":{"id":5,"brand":"BMW",...}}
+//
+// После обрыва браузерный EventSource переподключается сам и передает заголовок Last-Event-ID -
+// клиент получает все события после него (параметр ?lastEventId= делает то же самое).
+// Без него клиент получает только новые события. Если нужных событий уже нет в ленте
+// (клиент отсутствовал слишком долго), приходит событие reset - список нужно перечитать целиком.
+// Клиент, который читает медленнее, чем появляются события, и отстал на всю длину ленты,
+// отключается: запись в БД никогда не ждет клиентов ленты.
+// Каждое соединение обслуживает задача отдельного исполнителя ленты (виртуальный поток, если они есть),
+// поэтому подписчики не занимают потоки запросов /cars. Одновременно подключено не больше
+// CAR_EVENTS_MAX_SUBSCRIBERS клиентов, следующие получают 503 и переподключаются позже
+public class CarEventsServlet extends HttpServlet {
+
+    private CarEventLog events;
+    private ExecutorService executor;
+    private final Semaphore subscribers = new Semaphore(CAR_EVENTS_MAX_SUBSCRIBERS);
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public void init() throws ServletException {
+        events = AppContextListener.carEvents(getServletContext());
+        executor = AppContextListener.carEventsExecutor(getServletContext());
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        String lastEventId = request.getHeader("Last-Event-ID");
+        if (lastEventId == null) {
+            lastEventId = request.getParameter("lastEventId");
+        }
+        long afterSeq;
+        try {
+            afterSeq = lastEventId == null ? events.getLastSeq() : Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write(CarServlet.errorJson("Некорректный Last-Event-ID: " + lastEventId));
+            return;
+        }
+
+        if (!subscribers.tryAcquire()) {
+            // Свободного места нет: клиенту нужно подключиться позже (Retry-After)
+            response.setHeader("Retry-After", "5");
+            CarServlet.writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "Слишком много подключений к ленте изменений");
+            return;
+        }
+
+        AsyncContext async;
+        try {
+            response.setContentType("text/event-stream");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Cache-Control", "no-cache");
+            // Не даем nginx буферизовать поток событий
+            response.setHeader("X-Accel-Buffering", "no");
+            // Заголовки уходят сразу: клиент видит, что подписка установлена, еще до первого события
+            response.flushBuffer();
+
+            async = request.startAsync();
+        } catch (IOException | RuntimeException e) {
+            subscribers.release();
+            throw e;
+        }
+        // Соединение открыто, пока клиент не отключится или не отстанет
+        async.setTimeout(0);
+        Subscriber subscriber = new Subscriber(async, afterSeq);
+        async.addListener(subscriber);
+        try {
+            executor.execute(subscriber);
+        } catch (RejectedExecutionException e) {
+            // Исполнитель уже остановлен - приложение завершает работу
+            subscribers.release();
+            async.complete();
+        }
+    }
+
+    // Одно подключение к ленте: читает события после последнего отправленного и пишет их клиенту
+    private final class Subscriber implements Runnable, AsyncListener {
+        private final AsyncContext async;
+        private long afterSeq;
+        private volatile boolean done;
+
+        private Subscriber(AsyncContext async, long afterSeq) {
+            this.async = async;
+            this.afterSeq = afterSeq;
+        }
+
+        @Override
+        public void run() {
+            try {
+                PrintWriter out = async.getResponse().getWriter();
+                boolean first = true;
+                while (!done && !events.isClosed()) {
+                    List<CarEvent> batch = events.read(afterSeq, CAR_EVENTS_MAX_BATCH, CAR_EVENTS_HEARTBEAT_MS);
+                    if (batch == null) {
+                        if (!first) {
+                            // Клиент отстал на всю длину ленты - отключаем его
+                            break;
+                        }
+                        // Клиент вернулся с номером, которого уже нет в ленте
+                        afterSeq = events.getLastSeq();
+                        write(out, new CarEvent(afterSeq, CarEvent.RESET, null, null));
+                    } else if (batch.isEmpty()) {
+                        // Строка-комментарий: клиенты ее пропускают
+                        out.write(": ping\n\n");
+                    } else {
+                        for (CarEvent event : batch) {
+                            write(out, event);
+                        }
+                        afterSeq = batch.get(batch.size() - 1).getSeq();
+                    }
+                    first = false;
+                    out.flush();
+                    // PrintWriter не бросает IOException: отключение клиента видно только так
+                    if (out.checkError()) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // Клиент отключился
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                subscribers.release();
+                try {
+                    async.complete();
+                } catch (IllegalStateException e) {
+                    // Контейнер уже завершил запрос (ошибка соединения)
+                }
+            }
+        }
+
+        private void write(PrintWriter out, CarEvent event) throws IOException {
+            out.write("id: " + event.getSeq() + "\nevent: " + event.getType()
+                    + "\ndata: " + mapper.writeValueAsString(event) + "\n\n");
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            done = true;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            done = true;
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            done = true;
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
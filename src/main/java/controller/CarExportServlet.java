@@ -0,0 +1,80 @@
+// Пакет, в котором находится класс
+package controller;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import repository.BulkFormat;
+import repository.CarRepository;
+
+import java.io.IOException;
+
+import static constants.Constants.EXPORT_DEFAULT_PARTITIONS;
+import static constants.Constants.EXPORT_MAX_PARTITIONS;
+
+// Сервлет массовой выгрузки всех автомобилей: GET /cars/export
+// Формат - параметр ?format=ndjson|csv или заголовок Accept (application/x-ndjson, text/csv),
+// по умолчанию NDJSON. Автомобили идут по возрастанию id и пишутся в ответ по мере чтения,
+// список в памяти не собирается. На PostgreSQL строки формирует сама БД (COPY ... TO STDOUT),
+// а диапазон id делится на ?parallel=N частей, которые читаются параллельно
+// (по умолчанию EXPORT_DEFAULT_PARTITIONS, не больше EXPORT_MAX_PARTITIONS).
+// Если ошибка случилась, когда часть выгрузки уже отправлена, соединение обрывается -
+// клиент видит незавершенный ответ, а не обрезанный файл, похожий на полный
+public class CarExportServlet extends HttpServlet {
+
+    // Общий для всех сервлетов репозиторий, создается в AppContextListener
+    private CarRepository carRepository;
+
+    @Override
+    public void init() throws ServletException {
+        carRepository = AppContextListener.carRepository(getServletContext());
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        BulkFormat format;
+        int partitions;
+        try {
+            format = format(request);
+            String parallel = request.getParameter("parallel");
+            partitions = parallel == null ? EXPORT_DEFAULT_PARTITIONS : Integer.parseInt(parallel);
+            if (partitions < 1 || partitions > EXPORT_MAX_PARTITIONS) {
+                throw new IllegalArgumentException("parallel должен быть от 1 до " + EXPORT_MAX_PARTITIONS);
+            }
+        } catch (IllegalArgumentException e) {
+            CarServlet.writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        response.setContentType(format.mediaType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition",
+                "attachment; filename=\"cars." + format.name().toLowerCase() + "\"");
+
+        try {
+            carRepository.exportCars(response.getOutputStream(), format, partitions);
+        } catch (RuntimeException e) {
+            if (response.isCommitted()) {
+                throw new ServletException("Выгрузка прервана", e);
+            }
+            response.reset();
+            CarServlet.writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+        }
+    }
+
+    private static BulkFormat format(HttpServletRequest request) {
+        String name = request.getParameter("format");
+        if (name != null) {
+            BulkFormat format = BulkFormat.of(name);
+            if (format == null) {
+                throw new IllegalArgumentException("Поддерживаются форматы ndjson и csv");
+            }
+            return format;
+        }
+        BulkFormat accepted = BulkFormat.of(request.getHeader("Accept"));
+        return accepted != null ? accepted : BulkFormat.NDJSON;
+    }
+}
@@ -0,0 +1,99 @@
+// Пакет, в котором находится класс
+package controller;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import repository.BulkFormat;
+import repository.CarRepository;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static constants.Constants.IMPORT_PROGRESS_ROWS;
+
+// Сервлет массовой загрузки автомобилей: POST /cars/import
+// Тело запроса - поток NDJSON (Content-Type: application/x-ndjson) или CSV с заголовком
+// brand,year,price (Content-Type: text/csv). Формат можно задать и параметром ?format=ndjson|csv.
+// На PostgreSQL поток целиком уходит в COPY car FROM STDIN, тело запроса не собирается в памяти.
+// Ответ - NDJSON: по строке о ходе загрузки на каждые IMPORT_PROGRESS_ROWS автомобилей
+// и итоговая строка с количеством загруженных:
+// {"progress": 100000}
+// {"progress": 200000}
+// {"imported": 250000}
+// При ошибке последняя строка - {"error": "..."}. Пока о ходе загрузки ничего не отправлено,
+// ошибка приходит и статусом (400 - некорректные данные, 500 - прочие ошибки)
+public class CarImportServlet extends HttpServlet {
+
+    // Общий для всех сервлетов репозиторий, создается в AppContextListener
+    private CarRepository carRepository;
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public void init() throws ServletException {
+        carRepository = AppContextListener.carRepository(getServletContext());
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        String formatName = request.getParameter("format");
+        BulkFormat format = BulkFormat.of(formatName != null ? formatName : request.getContentType());
+        if (format == null) {
+            response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write("{\"error\": \"Поддерживаются форматы ndjson (application/x-ndjson) "
+                    + "и csv (text/csv)\"}");
+            return;
+        }
+
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter out = response.getWriter();
+
+        long[] reported = new long[1];
+        try {
+            long imported = carRepository.importCars(request.getInputStream(), format, rows -> {
+                if (rows - reported[0] >= IMPORT_PROGRESS_ROWS) {
+                    reported[0] = rows;
+                    out.write("{\"progress\": " + rows + "}\n");
+                    // flush отправляет строку клиенту сразу, а не по заполнении буфера ответа
+                    out.flush();
+                }
+            });
+            out.write("{\"imported\": " + imported + "}\n");
+        } catch (RuntimeException e) {
+            if (!response.isCommitted()) {
+                response.setStatus(isBadData(e)
+                        ? HttpServletResponse.SC_BAD_REQUEST
+                        : HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            // Сообщение об ошибке может содержать кавычки и переводы строк - экранируем его,
+            // чтобы ответ оставался корректным NDJSON
+            out.write(mapper.writeValueAsString(Map.of("error", "Загрузка не выполнена: " + e.getMessage())) + "\n");
+        }
+    }
+
+    // Ошибка в самих данных: не разбирается JSON или CSV, некорректное значение
+    // или нарушено ограничение таблицы (классы SQLSTATE 22 и 23)
+    private static boolean isBadData(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IllegalArgumentException || cause instanceof JacksonException) {
+                return true;
+            }
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null
+                    && (sqlException.getSQLState().startsWith("22") || sqlException.getSQLState().startsWith("23"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
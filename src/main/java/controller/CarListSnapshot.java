@@ -0,0 +1,145 @@
+// Пакет, в котором находится класс
+package controller;
+
+import events.CarEventLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+// Готовое тело ответа GET /cars: весь список автомобилей, уже закодированный в байты,
+// и его gzip-копия. Пока автомобили не меняются, запросы отдаются прямо из массивов байт -
+// без обращения к репозиторию, без Jackson и без сжатия на каждый запрос.
+// Снимок помнит номер последнего события ленты CarEventLog на момент сборки. Любая запись
+// (через /cars, /cars/batch или /cars/import) добавляет событие, и снимок становится устаревшим.
+// Лента видит только записи этого экземпляра приложения, поэтому снимок помнит и версию коллекции
+// (getCollectionVersion - ее считает БД) и сверяет ее на каждом запросе. Версия берется из кэша
+// репозитория, так что проверка дешевая, а запись другого узла или прямо в БД
+// делает снимок устаревшим не позже, чем через CACHE_TTL_MS.
+// Следующий запрос собирает новый снимок, остальные ждут его, а не собирают свой (запись меняет
+// ссылку целиком - copy-on-write, читатели без блокировки видят либо старый, либо новый снимок).
+// ETag снимка строится из того же, по чему проверяется актуальность, - номера события и версии
+// коллекции, - и формата: "all-s<эпоха>.<номер>.<версия>-<формат>". Эпоха - время создания снимка:
+// после перезапуска номера событий начинаются заново, и без нее старый ETag клиента
+// совпал бы с другим списком.
+// Список больше maxBytes в памяти не держим - такие запросы отдаются потоком, как раньше
+final class CarListSnapshot {
+
+    // Записывает весь список автомобилей в формате format
+    interface Encoder {
+        void write(WireFormat format, OutputStream out) throws IOException;
+    }
+
+    // Собранное тело ответа. raw == null - список не поместился в maxBytes
+    record Body(long seq, String version, String etag, byte[] raw, byte[] gzip) {
+
+        boolean isCurrent(long seq, String version) {
+            return this.seq == seq && this.version.equals(version);
+        }
+    }
+
+    private final CarEventLog events;
+    private final Supplier<String> collectionVersion;
+    private final Encoder encoder;
+    private final int maxBytes;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    // Отдельный снимок для каждого формата: собирается при первом запросе этого формата.
+    // Карта не меняется после публикации - при сборке создается новая
+    private volatile Map<WireFormat, Body> current = new EnumMap<>(WireFormat.class);
+    private final Object buildLock = new Object();
+
+    CarListSnapshot(CarEventLog events, Supplier<String> collectionVersion, Encoder encoder, int maxBytes) {
+        this.events = events;
+        this.collectionVersion = collectionVersion;
+        this.encoder = encoder;
+        this.maxBytes = maxBytes;
+    }
+
+    // Актуальный снимок для формата.
+    // Номер события и версия берутся до чтения данных: запись, попавшая между ними, сделает снимок
+    // устаревшим, и следующий запрос соберет его заново
+    Body get(WireFormat format) throws IOException {
+        long seq = events.getLastSeq();
+        String version = collectionVersion.get();
+        Body body = current.get(format);
+        if (body != null && body.isCurrent(seq, version)) {
+            return body;
+        }
+        synchronized (buildLock) {
+            // Пока ждали, снимок мог собрать другой поток
+            seq = events.getLastSeq();
+            version = collectionVersion.get();
+            body = current.get(format);
+            if (body != null && body.isCurrent(seq, version)) {
+                return body;
+            }
+            body = build(format, seq, version,
+                    "\"all-s" + epoch + "." + seq + "." + version + "-" + format.tag() + "\"");
+            Map<WireFormat, Body> next = new EnumMap<>(WireFormat.class);
+            next.putAll(current);
+            next.put(format, body);
+            current = next;
+            return body;
+        }
+    }
+
+    private Body build(WireFormat format, long seq, String version, String etag) throws IOException {
+        LimitedOutputStream raw = new LimitedOutputStream(maxBytes);
+        try {
+            encoder.write(format, raw);
+        } catch (IOException | RuntimeException e) {
+            // Jackson и репозиторий могут обернуть исключение буфера - смотрим на сам буфер
+            if (raw.exceeded) {
+                return new Body(seq, version, etag, null, null);
+            }
+            throw e;
+        }
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream(Math.max(32, raw.size() / 4));
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip, 64 * 1024)) {
+            raw.writeTo(out);
+        }
+        return new Body(seq, version, etag, raw.toByteArray(), gzip.toByteArray());
+    }
+
+    // Буфер в памяти, который отказывается расти больше limit байт
+    private static final class LimitedOutputStream extends ByteArrayOutputStream {
+        private final int limit;
+        private boolean exceeded;
+
+        LimitedOutputStream(int limit) {
+            super(Math.min(limit, 64 * 1024));
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            super.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            super.write(b, off, len);
+        }
+
+        private void ensureCapacity(int len) {
+            if (count + len > limit) {
+                exceeded = true;
+                throw new LimitExceededException();
+            }
+        }
+    }
+
+    private static final class LimitExceededException extends RuntimeException {
+        LimitExceededException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -2,20 +2,47 @@
 package controller;
 
 // Импорты необходимых библиотек
-import com.fasterxml.jackson.databind.ObjectMapper;  // Для работы с JSON
+import com.fasterxml.jackson.core.JsonGenerator;     // Для потоковой записи JSON
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import events.CarEventLog;                          // Лента изменений (актуальность снимка списка)
+import jakarta.servlet.AsyncContext;                // Асинхронная обработка запроса
 import jakarta.servlet.ServletException;            // Исключения сервлетов
 import jakarta.servlet.http.HttpServlet;            // Базовый класс сервлета
 import jakarta.servlet.http.HttpServletRequest;     // Объект HTTP-запроса
 import jakarta.servlet.http.HttpServletResponse;    // Объект HTTP-ответа
+import metrics.MetricsRegistry;                     // Метрики запросов
+import metrics.OperationMetrics;
 import model.Car;                                   // Модель автомобиля
+import model.CarFilter;                             // Условия поиска
+import model.CarLookup;                             // Результат поиска по нескольким id
+import model.CarPage;                               // Страница автомобилей
+import model.CarSearchResult;                       // Результат поиска
 
 import repository.CarRepository;
-import repository.CarRepositoryHibernate;
-import repository.CarRepositoryPostgress;
+import repository.VersionConflictException;
 
 import java.io.IOException;                         // Исключения ввода-вывода
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;                              // Для работы со списками
+import java.util.Locale;
 import java.util.Map;                               // Для работы с Map (параметры)
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static constants.Constants.ASYNC_TIMEOUT_MS;
+import static constants.Constants.GET_BY_IDS_MAX;
+import static constants.Constants.LIST_SNAPSHOT_ENABLED;
+import static constants.Constants.LIST_SNAPSHOT_MAX_BYTES;
+import static constants.Constants.PAGE_DEFAULT_LIMIT;
+import static constants.Constants.PAGE_MAX_LIMIT;
 
 // Класс сервлета для работы с автомобилями
 // Наследуется от HttpServlet - это обязательно для сервлетов
@@ -23,12 +50,156 @@ public class CarServlet extends HttpServlet {
 
     // Репозиторий для работы с данными об автомобилях
     // Это наше "хранилище" данных (обычно база данных, здесь - Map)
-    //private CarRepository carRepository = new CarRepositoryMap();
-    private CarRepository carRepository = new CarRepositoryHibernate();
+    // Общий для всех сервлетов, создается в AppContextListener
+    private CarRepository carRepository;
+
+    // Готовое (закодированное и сжатое) тело GET /cars или null, если снимок выключен
+    private CarListSnapshot listSnapshot;
+
+    // Параметры запроса, при наличии любого из которых GET /cars выполняет поиск
+    private static final Set<String> FILTER_PARAMS =
+            Set.of("brand", "minYear", "maxYear", "minPrice", "maxPrice", "sort");
+
+    // Для потоковой записи: не сбрасываем буфер в сеть после каждого автомобиля.
+    // Отдельный writer на каждый формат ответа (JSON, CBOR, Smile)
+    private Map<WireFormat, ObjectWriter> carWriters = new EnumMap<>(WireFormat.class);
+
+    {
+        for (WireFormat format : WireFormat.values()) {
+            carWriters.put(format, format.mapper().writerFor(Car.class)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE));
+        }
+    }
+
+    // Исполнитель, на котором выполняются запросы (виртуальные потоки на Java 21+).
+    // Общий для приложения, создается в AppContextListener
+    private ExecutorService executor;
+
+    // Метрики по HTTP-методам: задержка, ошибки (ответы 4xx/5xx), выполняющиеся запросы
+    private static final String HTTP_METRICS = "car_http_request_seconds";
+    private OperationMetrics getMetrics;
+    private OperationMetrics postMetrics;
+    private OperationMetrics putMetrics;
+    private OperationMetrics deleteMetrics;
+    private OperationMetrics otherMetrics;
+
+    // Томкат вызывает init() один раз при создании сервлета
+    @Override
+    public void init() throws ServletException {
+        carRepository = AppContextListener.carRepository(getServletContext());
+        executor = AppContextListener.requestExecutor(getServletContext());
+
+        // Снимок списка проверяет актуальность по ленте изменений и версии коллекции -
+        // без ленты отдаем список потоком
+        CarEventLog events = AppContextListener.carEvents(getServletContext());
+        if (LIST_SNAPSHOT_ENABLED && events != null) {
+            listSnapshot = new CarListSnapshot(events, carRepository::getCollectionVersion,
+                    this::writeAllCars, LIST_SNAPSHOT_MAX_BYTES);
+        }
+
+        MetricsRegistry registry = AppContextListener.metricsRegistry(getServletContext());
+        if (registry == null) {
+            registry = new MetricsRegistry();
+        }
+        String help = "Latency of /cars requests by HTTP method";
+        getMetrics = registry.operation(HTTP_METRICS, help, "method", "GET");
+        postMetrics = registry.operation(HTTP_METRICS, help, "method", "POST");
+        putMetrics = registry.operation(HTTP_METRICS, help, "method", "PUT");
+        deleteMetrics = registry.operation(HTTP_METRICS, help, "method", "DELETE");
+        otherMetrics = registry.operation(HTTP_METRICS, help, "method", "OTHER");
+    }
+
+    private OperationMetrics metricsFor(String method) {
+        switch (method) {
+            case "GET":
+                return getMetrics;
+            case "POST":
+                return postMetrics;
+            case "PUT":
+                return putMetrics;
+            case "DELETE":
+                return deleteMetrics;
+            default:
+                return otherMetrics;
+        }
+    }
+
+    // Асинхронная обработка запроса.
+    // Поток Томката только переводит запрос в асинхронный режим и сразу возвращается в пул,
+    // а doGet()/doPost()/doPut()/doDelete() с блокирующими обращениями к БД
+    // выполняются на исполнителе. Так медленная БД не занимает все потоки Томката,
+    // и дешевые запросы продолжают обслуживаться
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        OperationMetrics metrics = metricsFor(request.getMethod());
+        long start = metrics.start();
+
+        if (executor == null || !request.isAsyncSupported()) {
+            // Асинхронный режим не включен (нет async-supported в web.xml) - работаем как раньше
+            boolean failed = true;
+            try {
+                super.service(request, response);
+                failed = response.getStatus() >= 400;
+            } finally {
+                metrics.stop(start, failed);
+            }
+            return;
+        }
+
+        AsyncContext async = request.startAsync();
+        async.setTimeout(ASYNC_TIMEOUT_MS);
+        GuardedAsyncResponse guarded = new GuardedAsyncResponse(async);
+        async.addListener(guarded);
+        try {
+            executor.execute(() -> serviceAsync(async, guarded, metrics, start));
+        } catch (RejectedExecutionException e) {
+            // Исполнитель уже остановлен - приложение завершает работу
+            writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Сервис останавливается");
+            async.complete();
+            metrics.stop(start, true);
+        }
+    }
+
+    // Выполняется на потоке исполнителя: обычная обработка запроса и завершение AsyncContext.
+    // Задержка запроса считается от входа в service() до завершения, включая ожидание исполнителя.
+    // Запрос пишет в ответ через GuardedAsyncResponse: если клиенту уже ответили 503 по таймауту,
+    // дальнейшая запись бросает IOException и обработка прекращается, не трогая чужой ответ.
+    // Поток исполнителя не прерываем - interrupt посреди JDBC-вызова портит соединение пула
+    private void serviceAsync(AsyncContext async, GuardedAsyncResponse response,
+                              OperationMetrics metrics, long start) {
+        HttpServletRequest request = (HttpServletRequest) async.getRequest();
+        boolean failed = true;
+        try {
+            super.service(request, response);
+            failed = response.getStatus() >= 400;
+        } catch (Exception e) {
+            if (!response.isCommitted()) {
+                response.reset();
+                writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            }
+        } finally {
+            response.complete();
+            metrics.stop(start, failed || response.isTimedOut());
+        }
+    }
+
+    static void writeError(HttpServletResponse response, int status, String message) {
+        try {
+            response.setStatus(status);
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write(errorJson(message));
+        } catch (IOException | IllegalStateException ignored) {
+            // Клиент уже отключился или тело ответа начали писать потоком - сообщить об ошибке нельзя
+        }
+    }
 
-    // ObjectMapper из библиотеки Jackson для преобразования
-    // Java-объектов в JSON и обратно
-    private ObjectMapper mapper = new ObjectMapper();
+    // Тело ответа с ошибкой. Сообщение исключения может содержать кавычки и переводы строк -
+    // экранирует его Jackson, а не склейка строк
+    static String errorJson(String message) {
+        return WireFormat.JSON.mapper().createObjectNode().put("error", message).toString();
+    }
 
      // Методы сервлета (doGet(), doPost(), doPut(), doDelete()) — это обработчики HTTP-команд от клиента.
      // doGet()	    Получить данные	GET
@@ -59,9 +230,11 @@ public class CarServlet extends HttpServlet {
         });
         */
 
-        // Два варианта GET-запроса:
+        // Четыре варианта GET-запроса:
         // 1) GET http://10.2.3.4:8080/cars - все машины
-        // 2) GET http://10.2.3.4:8080/cars?id=3&color=red - машина по id
+        // 2) GET http://10.2.3.4:8080/cars?brand=BMW&minPrice=20000&sort=-year - поиск
+        // 3) GET http://10.2.3.4:8080/cars?afterId=10&limit=50 - страница машин
+        // 4) GET http://10.2.3.4:8080/cars?id=3&color=red - машина по id
 
         // request - объект запроса. Содержит все данные от клиента
         // response - объект ответа. В него записываем данные для клиента
@@ -80,25 +253,61 @@ public class CarServlet extends HttpServlet {
         // }
         Map<String, String[]> params = request.getParameterMap();
 
+        // Параметры разных вариантов запроса не смешиваем: иначе непонятно, какой из них имелся в виду
+        String conflict = conflictingParams(params);
+        if (conflict != null) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, conflict);
+            return;
+        }
+
         // Проверяем, есть ли параметры в запросе
         if (params.isEmpty()) {
             // ============================================
             // СЛУЧАЙ 1: Нет параметров → возвращаем ВСЕ машины
             // ============================================
 
-            // Получаем все автомобили из репозитория
-            List<Car> cars = carRepository.getAll();
+            // Пока автомобили не менялись, отдаем готовые байты снимка (сжатые, если клиент принимает gzip)
+            if (listSnapshot != null) {
+                writeListSnapshot(request, response);
+                return;
+            }
+
+            // ETag списка строим по версии коллекции - это дешевле, чем читать весь список.
+            // Если у клиента уже есть этот список (If-None-Match), отвечаем 304 без тела.
+            // Vary выставляем до проверки: ответ 304 тоже зависит от Accept
+            WireFormat format = varyByAccept(request, response);
+            String etag = "\"all-" + carRepository.getCollectionVersion() + "-" + format.tag() + "\"";
+            if (notModified(request, response, etag)) {
+                return;
+            }
+            response.setHeader("ETag", etag);
 
-            // Преобразуем список автомобилей в JSON-строку
+            // Не собираем все автомобили в список и в одну JSON-строку.
+            // Читаем их из репозитория по одному и сразу пишем в поток ответа
             // Пример: [{"id":1,"model":"Toyota"},{"id":2,"model":"BMW"}]
-            String jsonResponse = mapper.writeValueAsString(cars);
+            writeAllCars(request, response);
 
-            // Записываем JSON-строку в тело ответа
-            response.getWriter().write(jsonResponse);
+        } else if (FILTER_PARAMS.stream().anyMatch(params::containsKey)) {
+            // ============================================
+            // СЛУЧАЙ 2: Поиск → GET /cars?brand=BMW&minYear=2018&sort=-price&limit=20
+            // ============================================
+            writeFiltered(request, response);
+
+        } else if (params.containsKey("afterId") || params.containsKey("limit")) {
+            // ============================================
+            // СЛУЧАЙ 3: Постраничное чтение → GET /cars?afterId=10&limit=50
+            // ============================================
+            writePage(request, response);
+
+        } else if (params.get("id").length > 1 || params.get("id")[0].contains(",")) {
+            // ============================================
+            // СЛУЧАЙ 4а: Несколько id → GET /cars?id=1,2,3 или /cars?id=1&id=2&id=3
+            // ============================================
+            writeLookup(request, response, params.get("id"));
 
         } else {
             // ============================================
-            // СЛУЧАЙ 2: Есть параметры → ищем конкретную машину
+            // СЛУЧАЙ 4: Есть параметры → ищем конкретную машину
             // ============================================
 
             // Получаем значение параметра "id" из Map
@@ -126,11 +335,325 @@ public class CarServlet extends HttpServlet {
                 response.getWriter().write("{\"Сообщение\" : \"Модель автомобиля не найдена\"}");
             } else {
 
-                // Автомобиль найден → преобразуем его в JSON
-                String json = mapper.writeValueAsString(car);
-                // Отправляем JSON клиенту
-                response.getWriter().write(json);
+                // Клиент уже имеет эту версию автомобиля в этом формате → 304 без сериализации и тела
+                String etag = carETag(car, varyByAccept(request, response));
+                if (notModified(request, response, etag)) {
+                    return;
+                }
+                response.setHeader("ETag", etag);
+
+                // Автомобиль найден → преобразуем его в формат, который просил клиент (JSON по умолчанию),
+                // и отправляем клиенту
+                writeBody(request, response, car);
+            }
+        }
+    }
+
+    // Сообщение об ошибке, если в запросе смешаны параметры разных вариантов GET /cars, иначе null.
+    // Поиск (brand, sort, ...) нельзя сочетать с afterId и id, постраничное чтение (afterId, limit) - с id.
+    // Посторонние параметры, как и раньше, не мешают: /cars?id=3&color=red
+    private static String conflictingParams(Map<String, String[]> params) {
+        if (params.isEmpty()) {
+            return null;
+        }
+        boolean filter = FILTER_PARAMS.stream().anyMatch(params::containsKey);
+        boolean page = params.containsKey("afterId") || params.containsKey("limit");
+        boolean byId = params.containsKey("id");
+        if (filter && (byId || params.containsKey("afterId"))) {
+            return "Параметры поиска нельзя сочетать с afterId и id";
+        }
+        if (!filter && page && byId) {
+            return "Параметры afterId и limit нельзя сочетать с id";
+        }
+        if (!filter && !page && !byId) {
+            return "Не указан ни id, ни параметры поиска или страницы";
+        }
+        return null;
+    }
+
+    // Сильный ETag автомобиля: id, версия записи и формат тела. Пример: "3-7-cbor".
+    // Одна и та же версия в JSON и CBOR - разные байты, поэтому и ETag у них разный
+    private static String carETag(Car car, WireFormat format) {
+        return "\"" + car.getId() + "-" + car.getVersion() + "-" + format.tag() + "\"";
+    }
+
+    // Формат ответа по Accept и заголовок Vary: Accept. Вызывается до проверки If-None-Match,
+    // чтобы и ответ 304 сообщал кэшам, что представление зависит от Accept
+    private static WireFormat varyByAccept(HttpServletRequest request, HttpServletResponse response) {
+        response.setHeader("Vary", "Accept");
+        return WireFormat.fromAccept(request.getHeader("Accept"));
+    }
+
+    // Если клиент прислал If-None-Match с текущим ETag, отвечаем 304 Not Modified
+    // и возвращаем true - тело ответа в этом случае не формируется вовсе
+    private static boolean notModified(HttpServletRequest request, HttpServletResponse response,
+                                       String etag) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // Для If-None-Match допускается слабое сравнение: W/"3-7" равен "3-7"
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                response.setHeader("ETag", etag);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Достает ожидаемую версию из If-Match: "3-7-json" → 7 (формат в ETag для версии не важен,
+    // ETag без формата "3-7" тоже принимается).
+    // Возвращает null, если заголовка нет или он равен *
+    private static Long expectedVersion(HttpServletRequest request, long id) {
+        String ifMatch = request.getHeader("If-Match");
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        String prefix = "\"" + id + "-";
+        if (!tag.startsWith(prefix) || !tag.endsWith("\"")) {
+            throw new VersionConflictException("If-Match " + tag + " не относится к автомобилю с id " + id);
+        }
+        String version = tag.substring(prefix.length(), tag.length() - 1);
+        int dash = version.indexOf('-');
+        if (dash >= 0) {
+            version = version.substring(0, dash);
+        }
+        try {
+            return Long.parseLong(version);
+        } catch (NumberFormatException e) {
+            throw new VersionConflictException("Некорректный If-Match: " + tag);
+        }
+    }
+
+    // Формат ответа выбирается по заголовку Accept, формат тела запроса - по Content-Type.
+    // Ошибки по-прежнему отправляются в JSON
+    private static WireFormat responseFormat(HttpServletRequest request, HttpServletResponse response) {
+        WireFormat format = WireFormat.fromAccept(request.getHeader("Accept"));
+        response.setContentType(format.mediaType());
+        if (format.isBinary()) {
+            // У двоичных форматов нет кодировки символов
+            response.setCharacterEncoding((String) null);
+        }
+        // Один URL отдает разные представления - кэши должны учитывать Accept
+        response.setHeader("Vary", "Accept");
+        return format;
+    }
+
+    private static <T> T readBody(HttpServletRequest request, Class<T> type) throws IOException {
+        WireFormat format = WireFormat.fromContentType(request.getContentType());
+        return format.mapper().readValue(request.getInputStream(), type);
+    }
+
+    // Записывает объект в тело ответа в формате, выбранном по Accept
+    private static void writeBody(HttpServletRequest request, HttpServletResponse response,
+                                  Object value) throws IOException {
+        WireFormat format = responseFormat(request, response);
+        format.mapper().writeValue(response.getOutputStream(), value);
+    }
+
+    // Отдает весь список из снимка CarListSnapshot: тело уже закодировано и сжато,
+    // остается выбрать вариант по Accept-Encoding и записать массив байт.
+    // Если список слишком велик для снимка, пишем его потоком из репозитория
+    private void writeListSnapshot(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        WireFormat format = responseFormat(request, response);
+        CarListSnapshot.Body body = listSnapshot.get(format);
+        // Сжатое и несжатое тело - разные представления: кэши учитывают Accept-Encoding,
+        // а у сжатого варианта свой ETag
+        response.setHeader("Vary", "Accept, Accept-Encoding");
+
+        if (body.raw() == null) {
+            if (notModified(request, response, body.etag())) {
+                return;
+            }
+            response.setHeader("ETag", body.etag());
+            writeAllCars(format, response.getOutputStream());
+            return;
+        }
+
+        boolean gzip = acceptsGzip(request);
+        String etag = gzip ? body.etag().substring(0, body.etag().length() - 1) + "-gzip\"" : body.etag();
+        if (notModified(request, response, etag)) {
+            return;
+        }
+        response.setHeader("ETag", etag);
+
+        byte[] bytes = gzip ? body.gzip() : body.raw();
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+    }
+
+    // Принимает ли клиент gzip: "Accept-Encoding: gzip, deflate", "gzip;q=0.5" или "*".
+    // q=0 означает явный отказ от кодировки
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            if ((name.equals("gzip") || name.equals("x-gzip") || name.equals("*"))
+                    && WireFormat.quality(parts) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Потоково записывает все автомобили массивом в тело ответа.
+    // В памяти одновременно находится только текущий автомобиль (и порция строк драйвера),
+    // поэтому потребление памяти не зависит от размера таблицы
+    private void writeAllCars(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        WireFormat format = responseFormat(request, response);
+        writeAllCars(format, response.getOutputStream());
+    }
+
+    // Записывает все автомобили массивом в out. Этим же методом собирается снимок списка
+    private void writeAllCars(WireFormat format, OutputStream out) throws IOException {
+        ObjectWriter carWriter = carWriters.get(format);
+        try (JsonGenerator generator = format.mapper().getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            carRepository.forEachCar(car -> {
+                try {
+                    carWriter.writeValue(generator, car);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Записывает в ответ автомобили, подходящие под условия поиска.
+    // sort - поле сортировки, минус перед ним означает сортировку по убыванию: sort=-price
+    // Фильтрация и сортировка выполняются в репозитории (в БД - по индексам),
+    // клиенту не нужно скачивать весь список.
+    // Пример ответа: {"items":[...], "truncated":true} - truncated означает, что подходящих больше limit
+    private void writeFiltered(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            CarFilter filter = new CarFilter();
+            filter.setBrand(request.getParameter("brand"));
+
+            String minYear = request.getParameter("minYear");
+            String maxYear = request.getParameter("maxYear");
+            String minPrice = request.getParameter("minPrice");
+            String maxPrice = request.getParameter("maxPrice");
+            String sort = request.getParameter("sort");
+            String limit = request.getParameter("limit");
+
+            if (minYear != null) filter.setMinYear(Integer.parseInt(minYear));
+            if (maxYear != null) filter.setMaxYear(Integer.parseInt(maxYear));
+            if (minPrice != null) filter.setMinPrice(new BigDecimal(minPrice));
+            if (maxPrice != null) filter.setMaxPrice(new BigDecimal(maxPrice));
+            if (sort != null) {
+                filter.setDescending(sort.startsWith("-"));
+                filter.setSortBy(sort.startsWith("-") ? sort.substring(1) : sort);
+            }
+
+            int limitValue = limit == null ? PAGE_MAX_LIMIT : Integer.parseInt(limit);
+            if (limitValue <= 0 || limitValue > PAGE_MAX_LIMIT) {
+                throw new IllegalArgumentException("limit должен быть от 1 до " + PAGE_MAX_LIMIT);
+            }
+            // Запрашиваем на одну запись больше: так без отдельного подсчета видно,
+            // что под условия подходит больше автомобилей, чем limit
+            filter.setLimit(limitValue + 1);
+            List<Car> cars = carRepository.find(filter);
+            boolean truncated = cars.size() > limitValue;
+            if (truncated) {
+                cars = cars.subList(0, limitValue);
+            }
+
+            writeBody(request, response, new CarSearchResult(cars, truncated));
+
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException тоже попадает сюда - это наследник IllegalArgumentException
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write(errorJson(e.getMessage()));
+        }
+    }
+
+    // Записывает в ответ автомобили с запрошенными id, найденные одним обращением к репозиторию.
+    // id можно передать повторяющимся параметром, списком через запятую или сочетанием обоих.
+    // Повторы id учитываются один раз, порядок ответа - порядок первого упоминания id
+    // Пример ответа: {"items":[...], "missingIds":[7]}
+    private void writeLookup(HttpServletRequest request, HttpServletResponse response,
+                             String[] idParams) throws IOException {
+        try {
+            Set<Long> ids = new LinkedHashSet<>();
+            for (String idParam : idParams) {
+                for (String part : idParam.split(",")) {
+                    if (!part.isBlank()) {
+                        ids.add(Long.parseLong(part.trim()));
+                    }
+                }
+            }
+            if (ids.isEmpty() || ids.size() > GET_BY_IDS_MAX) {
+                throw new IllegalArgumentException("Количество id должно быть от 1 до " + GET_BY_IDS_MAX);
+            }
+
+            List<Car> items = carRepository.getByIds(ids);
+
+            Set<Long> foundIds = new HashSet<>();
+            for (Car car : items) {
+                foundIds.add(car.getId());
+            }
+            List<Long> missingIds = new ArrayList<>();
+            for (Long id : ids) {
+                if (!foundIds.contains(id)) {
+                    missingIds.add(id);
+                }
+            }
+
+            writeBody(request, response, new CarLookup(items, missingIds));
+
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException тоже попадает сюда - это наследник IllegalArgumentException
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write(errorJson(e.getMessage()));
+        }
+    }
+
+    // Записывает в ответ одну страницу автомобилей с id > afterId.
+    // Запрашиваем у репозитория на одну запись больше, чтобы без лишнего запроса
+    // узнать, есть ли следующая страница
+    // Пример ответа: {"items":[...], "nextAfterId":60}
+    private void writePage(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            String afterIdParam = request.getParameter("afterId");
+            String limitParam = request.getParameter("limit");
+
+            long afterId = afterIdParam == null ? 0 : Long.parseLong(afterIdParam);
+            int limit = limitParam == null ? PAGE_DEFAULT_LIMIT : Integer.parseInt(limitParam);
+            if (limit <= 0 || limit > PAGE_MAX_LIMIT) {
+                throw new IllegalArgumentException("limit должен быть от 1 до " + PAGE_MAX_LIMIT);
+            }
+
+            List<Car> cars = carRepository.getPage(afterId, limit + 1);
+
+            Long nextAfterId = null;
+            if (cars.size() > limit) {
+                cars = cars.subList(0, limit);
+                nextAfterId = cars.get(limit - 1).getId();
             }
+
+            writeBody(request, response, new CarPage(cars, nextAfterId));
+
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException тоже попадает сюда - это наследник IllegalArgumentException
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write(errorJson(e.getMessage()));
         }
     }
 
@@ -144,18 +667,19 @@ public class CarServlet extends HttpServlet {
         // POST запрос используется для создания новых ресурсов
         // Пример: POST http://10.2.3.4:8080/cars
 
-        // Получаем данные об автомобиле из тела запроса (в формате JSON)
-        // req.getReader() получает поток для чтения тела запроса
-        // mapper.readValue() преобразует JSON из запроса в объект model.Car
-        Car car = mapper.readValue(req.getReader(), Car.class);
+        // Получаем данные об автомобиле из тела запроса (JSON, CBOR или Smile - по Content-Type)
+        // req.getInputStream() получает поток для чтения тела запроса
+        // readBody() преобразует тело запроса в объект model.Car
+        Car car = readBody(req, Car.class);
 
         // Сохраняем автомобиль в репозитории
         // Метод save обычно возвращает сохраненный объект с присвоенным ID
         car = carRepository.save(car);
+        resp.setHeader("ETag", carETag(car, WireFormat.fromAccept(req.getHeader("Accept"))));
 
-        // Преобразуем сохраненный автомобиль обратно в JSON
+        // Преобразуем сохраненный автомобиль обратно в формат клиента
         // И отправляем его в ответ (обычно с присвоенным ID)
-        resp.getWriter().write(mapper.writeValueAsString(car));
+        writeBody(req, resp, car);
     }
 
 
@@ -205,12 +729,11 @@ public class CarServlet extends HttpServlet {
             // Если идентификатор существует то преобразуем его в параметр лонг
             Long id = Long.parseLong(idParam);
 
-            // ObjectMapper mapper - это "переводчик" между JSON и Java-объектами.
-            // req.getReader() - получаем данные от клиента
+            // ObjectMapper mapper - это "переводчик" между JSON (или CBOR/Smile) и Java-объектами.
+            // readBody() выбирает mapper по Content-Type и читает данные от клиента
             // Car.class - указываем, во что преобразовать
-            // mapper.readValue() - выполняем преобразование
             // Результат присваиваем переменной Car updatedCar
-            Car updatedCar = mapper.readValue(request.getReader(), Car.class);
+            Car updatedCar = readBody(request, Car.class);
             // mapper смотрит на JSON и Class<Car>
             // и делает следующее:
             // 1. Читает JSON: {"brand":"Tesla","model":"Model 3","color":"Red","year":2023}
@@ -231,17 +754,33 @@ public class CarServlet extends HttpServlet {
             // Устанавливаем ID из параметра
             updatedCar.setId(id);
 
+            // Если клиент прислал If-Match с ETag, обновляем только ту версию, которую он видел
+            Long expectedVersion = expectedVersion(request, id);
+
             // Сохраняем объект в репозиторий который в свою очередь уже сохранит ее в базу данных
-            Car updateCar = carRepository.update(updatedCar);
-            // Преобразуем сохраненный объект в JSON
-            String json = mapper.writeValueAsString(updateCar);
-            // отправляем клиенту
-            response.getWriter().write(json);
+            Car updateCar = expectedVersion == null
+                    ? carRepository.update(updatedCar)
+                    : carRepository.update(updatedCar, expectedVersion);
+
+            if (updateCar == null && request.getHeader("If-Match") != null) {
+                // Условие If-Match не выполнено: обновлять нечего
+                throw new VersionConflictException("Автомобиль с id " + id + " не найден");
+            }
+            if (updateCar != null) {
+                response.setHeader("ETag", carETag(updateCar, WireFormat.fromAccept(request.getHeader("Accept"))));
+            }
+
+            // Преобразуем сохраненный объект в формат клиента и отправляем ему
+            writeBody(request, response, updateCar);
 
+        } catch (VersionConflictException e) {
+            // Автомобиль изменился после того, как клиент его прочитал → 412 Precondition Failed
+            response.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+            response.getWriter().write(errorJson(e.getMessage()));
         } catch (Exception e) {
             //Если мы попадаем в исключение то в ответе отправляем сообщение об ошибке
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
+            response.getWriter().write(errorJson(e.getMessage()));
         }
     }
 
@@ -273,14 +812,14 @@ public class CarServlet extends HttpServlet {
             Car result = carRepository.delete(id);
 
             // Отправляем клиенту объект который был удален
-            response.getWriter().write(mapper.writeValueAsString(result));
+            writeBody(request, response, result);
 
         }catch (Exception e){
             //Статус ошибки
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
 
             // Сообщение которые отправятся клиенту в случае ошибки
-            response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
+            response.getWriter().write(errorJson(e.getMessage()));
 
         }
     }
@@ -0,0 +1,47 @@
+// Пакет, в котором находится класс
+package controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import repository.CarRepository;
+
+import java.io.IOException;
+
+// Сервлет статистики по автомобилям: GET /cars/stats
+// Возвращает количество, минимальную, максимальную и среднюю цену - всего,
+// по маркам и по годам выпуска, а также перцентили цены.
+// Статистика считается там, где лежат данные (в БД или в памяти репозитория),
+// поэтому клиенту не нужно скачивать весь список автомобилей
+// Пример ответа:
+// {"total":{"count":5,"minPrice":12000,"maxPrice":35000,"avgPrice":19400.00},
+//  "byBrand":{"BMW":{...}}, "byYear":{"2018":{...}}, "pricePercentiles":{"p50":15000,...}}
+public class CarStatsServlet extends HttpServlet {
+
+    // Общий для всех сервлетов репозиторий, создается в AppContextListener
+    private CarRepository carRepository;
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public void init() throws ServletException {
+        carRepository = AppContextListener.carRepository(getServletContext());
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        try {
+            response.getWriter().write(mapper.writeValueAsString(carRepository.getCarStats()));
+        } catch (RuntimeException e) {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            response.getWriter().write(CarServlet.errorJson(e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,345 @@
+// Пакет, в котором находится класс
+package controller;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+// Ответ асинхронного запроса, общий для потока исполнителя и таймаута AsyncContext.
+// Если запрос не завершился за ASYNC_TIMEOUT_MS, onTimeout() отвечает 503 и завершает запрос.
+// После этого Томкат может отдать объект ответа другому запросу, поэтому поток исполнителя,
+// который еще выполняет doGet()/doPut(), больше не должен к нему обращаться:
+// запись тела бросает IOException (обработка запроса на этом прерывается),
+// изменения статуса и заголовков игнорируются, а чтение видит уже отправленный ответ 503.
+// Таймаут и запись в ответ выполняются под одной блокировкой - они не пересекаются
+final class GuardedAsyncResponse extends HttpServletResponseWrapper implements AsyncListener {
+
+    private final AsyncContext async;
+
+    // Запрос завершен: потоком исполнителя (complete) или по таймауту. Меняется под this
+    private boolean finished;
+    private boolean timedOut;
+
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    GuardedAsyncResponse(AsyncContext async) {
+        super((HttpServletResponse) async.getResponse());
+        this.async = async;
+    }
+
+    // Завершает запрос из потока исполнителя, если его еще не завершил таймаут
+    void complete() {
+        if (writer != null) {
+            writer.flush();
+        }
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            async.complete();
+        }
+    }
+
+    synchronized boolean isTimedOut() {
+        return timedOut;
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            timedOut = true;
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (!response.isCommitted()) {
+                response.reset();
+                CarServlet.writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                        "Превышено время обработки запроса");
+            }
+            async.complete();
+        }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    // ===== Тело ответа: после завершения запись бросает IOException =====
+
+    @Override
+    public synchronized ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            outputStream = new GuardedOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+
+    // Writer поверх защищенного потока: запись после таймаута не доходит до ответа.
+    // Буфер writer сбрасывается в complete()
+    @Override
+    public synchronized PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+                    Charset.forName(getCharacterEncoding())));
+        }
+        return writer;
+    }
+
+    private final class GuardedOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+
+        GuardedOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (GuardedAsyncResponse.this) {
+                ensureActive();
+                delegate.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (GuardedAsyncResponse.this) {
+                ensureActive();
+                delegate.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (GuardedAsyncResponse.this) {
+                ensureActive();
+                delegate.flush();
+            }
+        }
+
+        // Поток ответа закрывает Томкат при завершении запроса
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+
+        private void ensureActive() throws IOException {
+            if (finished) {
+                throw new IOException("Запрос уже завершен по таймауту");
+            }
+        }
+    }
+
+    // ===== Чтение состояния: после таймаута ответ уже отправлен =====
+
+    @Override
+    public synchronized boolean isCommitted() {
+        return finished || super.isCommitted();
+    }
+
+    @Override
+    public synchronized int getStatus() {
+        return timedOut ? SC_SERVICE_UNAVAILABLE : super.getStatus();
+    }
+
+    @Override
+    public synchronized boolean containsHeader(String name) {
+        return !timedOut && super.containsHeader(name);
+    }
+
+    @Override
+    public synchronized String getHeader(String name) {
+        return timedOut ? null : super.getHeader(name);
+    }
+
+    @Override
+    public synchronized Collection<String> getHeaders(String name) {
+        return timedOut ? List.of() : super.getHeaders(name);
+    }
+
+    @Override
+    public synchronized Collection<String> getHeaderNames() {
+        return timedOut ? List.of() : super.getHeaderNames();
+    }
+
+    @Override
+    public synchronized String getContentType() {
+        return timedOut ? null : super.getContentType();
+    }
+
+    @Override
+    public synchronized String getCharacterEncoding() {
+        return timedOut ? "UTF-8" : super.getCharacterEncoding();
+    }
+
+    @Override
+    public synchronized int getBufferSize() {
+        return timedOut ? 0 : super.getBufferSize();
+    }
+
+    @Override
+    public synchronized Locale getLocale() {
+        return timedOut ? Locale.getDefault() : super.getLocale();
+    }
+
+    // ===== Статус и заголовки: после завершения изменения игнорируются =====
+
+    @Override
+    public synchronized void setStatus(int sc) {
+        if (!finished) {
+            super.setStatus(sc);
+        }
+    }
+
+    @Override
+    public synchronized void sendError(int sc, String msg) throws IOException {
+        if (!finished) {
+            super.sendError(sc, msg);
+        }
+    }
+
+    @Override
+    public synchronized void sendError(int sc) throws IOException {
+        if (!finished) {
+            super.sendError(sc);
+        }
+    }
+
+    @Override
+    public synchronized void setHeader(String name, String value) {
+        if (!finished) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public synchronized void addHeader(String name, String value) {
+        if (!finished) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public synchronized void setIntHeader(String name, int value) {
+        if (!finished) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public synchronized void addIntHeader(String name, int value) {
+        if (!finished) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public synchronized void setDateHeader(String name, long date) {
+        if (!finished) {
+            super.setDateHeader(name, date);
+        }
+    }
+
+    @Override
+    public synchronized void addDateHeader(String name, long date) {
+        if (!finished) {
+            super.addDateHeader(name, date);
+        }
+    }
+
+    @Override
+    public synchronized void setContentType(String type) {
+        if (!finished) {
+            super.setContentType(type);
+        }
+    }
+
+    @Override
+    public synchronized void setCharacterEncoding(String charset) {
+        if (!finished) {
+            super.setCharacterEncoding(charset);
+        }
+    }
+
+    @Override
+    public synchronized void setContentLength(int len) {
+        if (!finished) {
+            super.setContentLength(len);
+        }
+    }
+
+    @Override
+    public synchronized void setContentLengthLong(long len) {
+        if (!finished) {
+            super.setContentLengthLong(len);
+        }
+    }
+
+    @Override
+    public synchronized void setLocale(Locale locale) {
+        if (!finished) {
+            super.setLocale(locale);
+        }
+    }
+
+    @Override
+    public synchronized void setBufferSize(int size) {
+        if (!finished) {
+            super.setBufferSize(size);
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        if (!finished) {
+            super.reset();
+        }
+    }
+
+    @Override
+    public synchronized void resetBuffer() {
+        if (!finished) {
+            super.resetBuffer();
+        }
+    }
+
+    @Override
+    public synchronized void flushBuffer() throws IOException {
+        if (!finished) {
+            super.flushBuffer();
+        }
+    }
+}
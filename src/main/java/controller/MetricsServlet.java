@@ -0,0 +1,41 @@
+// Пакет, в котором находится класс
+package controller;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+// Сервлет метрик: GET /metrics
+// Отдает метрики приложения в текстовом формате Prometheus:
+// задержки (p50, p99, p99.9), количество вызовов, ошибки и выполняющиеся вызовы
+// для каждого метода репозитория и каждого HTTP-метода /cars
+// Пример ответа:
+// car_repository_operation_seconds{operation="getById",quantile="0.99"} 0.000250879
+// car_repository_operation_seconds_count{operation="getById"} 1234
+public class MetricsServlet extends HttpServlet {
+
+    // Общий реестр метрик, создается в AppContextListener
+    private MetricsRegistry metricsRegistry;
+
+    @Override
+    public void init() throws ServletException {
+        metricsRegistry = AppContextListener.metricsRegistry(getServletContext());
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+
+        PrintWriter out = response.getWriter();
+        metricsRegistry.writePrometheus(out);
+        out.flush();
+    }
+}
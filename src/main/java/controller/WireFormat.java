@@ -0,0 +1,113 @@
+// Пакет, в котором находится класс
+package controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import java.util.Locale;
+
+// Формат тела запроса и ответа.
+// JSON - формат по умолчанию, CBOR и Smile - компактные двоичные форматы
+// для внутренних сервисов: меньше байт по сети и быстрее разбор.
+// Объекты Car во всех форматах одинаковые, отличается только кодировка
+enum WireFormat {
+
+    JSON("application/json", new ObjectMapper()),
+    CBOR("application/cbor", new CBORMapper()),
+    SMILE("application/x-jackson-smile", new SmileMapper());
+
+    private final String mediaType;
+    private final ObjectMapper mapper;
+
+    WireFormat(String mediaType, ObjectMapper mapper) {
+        this.mediaType = mediaType;
+        this.mapper = mapper;
+    }
+
+    String mediaType() {
+        return mediaType;
+    }
+
+    ObjectMapper mapper() {
+        return mapper;
+    }
+
+    // Короткое имя формата для ETag: "json", "cbor", "smile"
+    String tag() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    boolean isBinary() {
+        return this != JSON;
+    }
+
+    // Формат тела запроса по заголовку Content-Type.
+    // Неизвестный или отсутствующий тип считаем JSON, как и раньше
+    static WireFormat fromContentType(String contentType) {
+        WireFormat format = byMediaType(contentType);
+        return format == null ? JSON : format;
+    }
+
+    // Формат ответа по заголовку Accept.
+    // Пример: "application/cbor, application/json;q=0.5" → CBOR.
+    // Выбираем поддерживаемый тип с наибольшим q, при равенстве - первый в списке.
+    // Если подходящего типа нет (или заголовка нет) - отвечаем JSON
+    static WireFormat fromAccept(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return JSON;
+        }
+        WireFormat best = null;
+        double bestQuality = 0;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            WireFormat format = byMediaType(parts[0]);
+            if (format == null) {
+                continue;
+            }
+            double quality = quality(parts);
+            if (quality > bestQuality) {
+                best = format;
+                bestQuality = quality;
+            }
+        }
+        return best == null ? JSON : best;
+    }
+
+    private static WireFormat byMediaType(String value) {
+        if (value == null) {
+            return null;
+        }
+        // Отрезаем параметры: "application/json; charset=UTF-8" → "application/json"
+        int semicolon = value.indexOf(';');
+        String type = (semicolon < 0 ? value : value.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+        switch (type) {
+            case "application/json":
+            case "application/*":
+            case "*/*":
+                return JSON;
+            case "application/cbor":
+                return CBOR;
+            case "application/x-jackson-smile":
+            case "application/smile":
+                return SMILE;
+            default:
+                return null;
+        }
+    }
+
+    // Значение параметра q ("вес" типа в Accept или кодировки в Accept-Encoding), по умолчанию 1
+    static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
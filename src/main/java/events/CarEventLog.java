@@ -0,0 +1,110 @@
+package events;
+
+import model.Car;
+import model.CarEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Лента изменений автомобилей: кольцевой буфер последних capacity событий с порядковыми номерами.
+// Запись (publish) только кладет событие в буфер и будит читателей - она никогда не ждет
+// клиентов, поэтому медленный клиент не тормозит save/update/delete.
+// Каждый читатель сам помнит номер последнего полученного события и читает следующие (read).
+// Если читатель отстал больше чем на capacity событий, его события уже перезаписаны -
+// read сообщает об этом, и читателю нужно перечитать данные целиком.
+// ReentrantLock вместо synchronized: ожидающие виртуальные потоки не занимают поток-носитель
+public class CarEventLog {
+
+    private final CarEvent[] ring;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+
+    // Номер последнего записанного события (0 - событий еще не было).
+    // Меняется только под lock, volatile - чтобы getLastSeq() читал его без блокировки
+    private volatile long lastSeq;
+    private boolean closed;
+
+    public CarEventLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Размер ленты событий должен быть больше 0: " + capacity);
+        }
+        this.ring = new CarEvent[capacity];
+    }
+
+    // Записывает событие и возвращает его. Автомобиль копируется: объект, переданный
+    // в репозиторий, вызывающий код может изменить и после записи
+    public CarEvent publish(String type, Long id, Car car) {
+        Car snapshot = car == null ? null
+                : new Car(car.getId(), car.getBrand(), car.getYear(), car.getPrice(), car.getVersion());
+        lock.lock();
+        try {
+            CarEvent event = new CarEvent(++lastSeq, type, id, snapshot);
+            ring[(int) (event.getSeq() % ring.length)] = event;
+            published.signalAll();
+            return event;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Возвращает до max событий с номерами больше afterSeq. Если таких пока нет, ждет их
+    // не дольше timeoutMs и возвращает пустой список (в том числе после close()).
+    // Возвращает null, если часть событий после afterSeq уже вытеснена из буфера
+    // или afterSeq больше последнего номера (номер выдан до перезапуска приложения)
+    public List<CarEvent> read(long afterSeq, int max, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            if (afterSeq > lastSeq) {
+                return null;
+            }
+            while (lastSeq == afterSeq) {
+                long remaining = deadline - System.nanoTime();
+                if (closed || remaining <= 0) {
+                    return List.of();
+                }
+                published.awaitNanos(remaining);
+            }
+            if (afterSeq < lastSeq - ring.length) {
+                return null;
+            }
+            long to = Math.min(lastSeq, afterSeq + max);
+            List<CarEvent> events = new ArrayList<>((int) (to - afterSeq));
+            for (long seq = afterSeq + 1; seq <= to; seq++) {
+                events.add(ring[(int) (seq % ring.length)]);
+            }
+            return events;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Номер последнего записанного события: с него начинает клиент, которому не нужна история
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Будит всех читателей, чтобы они завершились (при остановке приложения)
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            published.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
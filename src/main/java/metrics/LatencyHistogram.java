@@ -0,0 +1,111 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Гистограмма задержек в наносекундах без блокировок.
+// Значения раскладываются по логарифмически-линейным корзинам (как в HdrHistogram):
+// каждая степень двойки делится на SUB_BUCKETS равных частей, поэтому относительная
+// погрешность перцентиля не больше 1/SUB_BUCKETS (~3%) на всем диапазоне.
+// record() - одна атомарная операция над массивом и LongAdder, без блокировок и без аллокаций
+public class LatencyHistogram {
+
+    // Количество корзин на одну степень двойки (степень двойки)
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Наибольшая степень двойки, которую различаем: 2^40 нс ≈ 18 минут.
+    // Большие значения попадают в последнюю корзину
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketIndex(nanos));
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    // Снимок корзин для расчета перцентилей. Вызывается при выдаче метрик, а не на горячем пути
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total);
+    }
+
+    // Значения меньше SUB_BUCKETS лежат каждое в своей корзине,
+    // большие - в корзине своей степени двойки и своей части внутри нее
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    // Наибольшее значение, которое попадает в корзину index
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    // Согласованная копия корзин гистограммы
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long total;
+
+        private Snapshot(long[] counts, long total) {
+            this.counts = counts;
+            this.total = total;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        // Значение перцентиля (quantile от 0 до 1) в наносекундах по методу ближайшего ранга.
+        // Возвращает верхнюю границу корзины, то есть оценку сверху
+        public long valueAtQuantile(double quantile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return bucketUpperBound(counts.length - 1);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package metrics;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Реестр метрик приложения.
+// Метрики регистрируются один раз при создании компонентов (репозитория, сервлета),
+// после чего компоненты держат ссылки на свои OperationMetrics и пишут в них напрямую -
+// реестр на горячем пути не участвует.
+// Метрики группируются в семейства: одно имя и одна метка, например
+// car_repository_operation_seconds{operation="getById"}
+public class MetricsRegistry {
+
+    // Перцентили, которые выдаются для каждой операции
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    // Возвращает метрики операции labelValue в семействе name, создавая их при первом обращении
+    public synchronized OperationMetrics operation(String name, String help, String labelName, String labelValue) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, labelName));
+        return family.operations.computeIfAbsent(labelValue, key -> new OperationMetrics());
+    }
+
+    // Записывает все метрики в текстовом формате Prometheus (version 0.0.4).
+    // Для каждого семейства выдаются:
+    //   <name>{label, quantile}  - перцентили задержки в секундах (summary)
+    //   <name>_count, <name>_sum - количество вызовов и суммарное время (по ним считается rate)
+    //   <base>_errors_total      - количество вызовов, завершившихся ошибкой
+    //   <base>_in_flight         - количество выполняющихся сейчас вызовов
+    // где base - имя без суффикса единиц измерения: car_repository_operation_seconds → car_repository_operation
+    public synchronized void writePrometheus(PrintWriter out) {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            String base = name.endsWith("_seconds") ? name.substring(0, name.length() - "_seconds".length()) : name;
+
+            line(out, "# HELP " + name + " " + family.help);
+            line(out, "# TYPE " + name + " summary");
+            for (Map.Entry<String, OperationMetrics> operation : family.operations.entrySet()) {
+                String label = family.labelName + "=\"" + operation.getKey() + "\"";
+                LatencyHistogram latency = operation.getValue().getLatency();
+                LatencyHistogram.Snapshot snapshot = latency.snapshot();
+                for (double quantile : QUANTILES) {
+                    line(out, name + "{" + label + ",quantile=\"" + quantile + "\"} "
+                            + seconds(snapshot.valueAtQuantile(quantile)));
+                }
+                line(out, name + "_count{" + label + "} " + latency.getCount());
+                line(out, name + "_sum{" + label + "} " + seconds(latency.getSumNanos()));
+            }
+
+            line(out, "# HELP " + base + "_errors_total Calls that ended with an error");
+            line(out, "# TYPE " + base + "_errors_total counter");
+            for (Map.Entry<String, OperationMetrics> operation : family.operations.entrySet()) {
+                line(out, base + "_errors_total{" + family.labelName + "=\"" + operation.getKey() + "\"} "
+                        + operation.getValue().getErrors());
+            }
+
+            line(out, "# HELP " + base + "_in_flight Calls in progress");
+            line(out, "# TYPE " + base + "_in_flight gauge");
+            for (Map.Entry<String, OperationMetrics> operation : family.operations.entrySet()) {
+                line(out, base + "_in_flight{" + family.labelName + "=\"" + operation.getKey() + "\"} "
+                        + operation.getValue().getInFlight());
+            }
+        }
+    }
+
+    // Prometheus ожидает перевод строки \n независимо от операционной системы
+    private static void line(PrintWriter out, String text) {
+        out.print(text);
+        out.print('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static final class Family {
+        private final String help;
+        private final String labelName;
+        private final Map<String, OperationMetrics> operations = new LinkedHashMap<>();
+
+        private Family(String help, String labelName) {
+            this.help = help;
+            this.labelName = labelName;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Метрики одной операции: гистограмма задержек (она же счетчик вызовов для расчета
+// пропускной способности), счетчик ошибок и количество выполняющихся сейчас вызовов.
+// Использование:
+//   long start = metrics.start();
+//   boolean failed = true;
+//   try { ...; failed = false; } finally { metrics.stop(start, failed); }
+public class OperationMetrics {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+
+    // Отмечает начало вызова и возвращает момент начала для stop()
+    public long start() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    public void stop(long start, boolean failed) {
+        record(System.nanoTime() - start, failed);
+        inFlight.decrement();
+    }
+
+    // Учитывает вызов, длительность которого уже измерена
+    public void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+}
@@ -8,6 +8,9 @@ public class Car {
     private String brand;
     private int year;
     private BigDecimal price;
+    // Версия записи: увеличивается при каждом обновлении.
+    // Используется для ETag и условных обновлений (If-Match)
+    private long version;
 
     public Car() {
     }
@@ -25,6 +28,11 @@ public class Car {
         this.price = price;
     }
 
+    public Car(Long id, String brand, int year, BigDecimal price, long version) {
+        this(id, brand, year, price);
+        this.version = version;
+    }
+
     public void setBrand(String brand) {
         this.brand = brand;
     }
@@ -57,6 +65,14 @@ public class Car {
         this.price = price;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "model.Car{" +
@@ -64,17 +80,18 @@ public class Car {
                 ", brand='" + brand + '\'' +
                 ", year=" + year +
                 ", price=" + price +
+                ", version=" + version +
                 '}';
     }
 
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof Car car)) return false;
-        return year == car.year && Objects.equals(id, car.id) && Objects.equals(brand, car.brand) && Objects.equals(price, car.price);
+        return year == car.year && version == car.version && Objects.equals(id, car.id) && Objects.equals(brand, car.brand) && Objects.equals(price, car.price);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, brand, year, price);
+        return Objects.hash(id, brand, year, price, version);
     }
 }
@@ -0,0 +1,45 @@
+package model;
+
+// Событие ленты изменений автомобилей (GET /cars/events).
+// seq - порядковый номер события, растет без пропусков; type - "created", "updated", "deleted"
+// или "reset" (изменений слишком много, чтобы передать их по одному: например, массовая загрузка
+// или клиент отстал от ленты - нужно перечитать список целиком).
+// car - автомобиль после изменения, для deleted - удаленный автомобиль (если хранилище
+// его вернуло), для reset - null
+public class CarEvent {
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+    public static final String RESET = "reset";
+
+    private long seq;
+    private String type;
+    private Long id;
+    private Car car;
+
+    public CarEvent() {
+    }
+
+    public CarEvent(long seq, String type, Long id, Car car) {
+        this.seq = seq;
+        this.type = type;
+        this.id = id;
+        this.car = car;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Car getCar() {
+        return car;
+    }
+}
@@ -0,0 +1,116 @@
+package model;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.Set;
+
+// Условия поиска автомобилей для GET /cars?brand=&minYear=&maxYear=&minPrice=&maxPrice=&sort=&limit=
+// Любое условие может быть null - тогда оно не ограничивает выборку.
+// Границы диапазонов включаются. sortBy - одно из полей id, brand, year, price
+public class CarFilter {
+    public static final Set<String> SORT_FIELDS = Set.of("id", "brand", "year", "price");
+
+    private String brand;
+    private Integer minYear;
+    private Integer maxYear;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private String sortBy = "id";
+    private boolean descending;
+    private Integer limit;
+
+    public CarFilter() {
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public void setBrand(String brand) {
+        this.brand = brand;
+    }
+
+    public Integer getMinYear() {
+        return minYear;
+    }
+
+    public void setMinYear(Integer minYear) {
+        this.minYear = minYear;
+    }
+
+    public Integer getMaxYear() {
+        return maxYear;
+    }
+
+    public void setMaxYear(Integer maxYear) {
+        this.maxYear = maxYear;
+    }
+
+    public BigDecimal getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(BigDecimal minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public BigDecimal getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(BigDecimal maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public String getSortBy() {
+        return sortBy;
+    }
+
+    public void setSortBy(String sortBy) {
+        if (!SORT_FIELDS.contains(sortBy)) {
+            throw new IllegalArgumentException("Сортировка возможна только по полям " + SORT_FIELDS);
+        }
+        this.sortBy = sortBy;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    // Проверяет, подходит ли автомобиль под все условия фильтра
+    public boolean matches(Car car) {
+        if (brand != null && !Objects.equals(brand, car.getBrand())) return false;
+        if (minYear != null && car.getYear() < minYear) return false;
+        if (maxYear != null && car.getYear() > maxYear) return false;
+        if (minPrice != null && (car.getPrice() == null || car.getPrice().compareTo(minPrice) < 0)) return false;
+        if (maxPrice != null && (car.getPrice() == null || car.getPrice().compareTo(maxPrice) > 0)) return false;
+        return true;
+    }
+
+    // Порядок сортировки результата. При равных значениях поля автомобили упорядочены по id
+    public Comparator<Car> comparator() {
+        Comparator<Car> byField = switch (sortBy) {
+            case "brand" -> Comparator.comparing(Car::getBrand, Comparator.nullsFirst(Comparator.naturalOrder()));
+            case "year" -> Comparator.comparingInt(Car::getYear);
+            case "price" -> Comparator.comparing(Car::getPrice, Comparator.nullsFirst(Comparator.naturalOrder()));
+            default -> Comparator.comparing(Car::getId);
+        };
+        if (descending) {
+            byField = byField.reversed();
+        }
+        return byField.thenComparing(Car::getId);
+    }
+}
@@ -0,0 +1,34 @@
+package model;
+
+import java.util.List;
+
+// Результат поиска нескольких автомобилей по id: GET /cars?id=1,2,3 или ?id=1&id=2&id=3.
+// items - найденные автомобили в порядке запрошенных id, missingIds - id, которых нет в хранилище
+public class CarLookup {
+    private List<Car> items;
+    private List<Long> missingIds;
+
+    public CarLookup() {
+    }
+
+    public CarLookup(List<Car> items, List<Long> missingIds) {
+        this.items = items;
+        this.missingIds = missingIds;
+    }
+
+    public List<Car> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Car> items) {
+        this.items = items;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+
+    public void setMissingIds(List<Long> missingIds) {
+        this.missingIds = missingIds;
+    }
+}
@@ -0,0 +1,48 @@
+package model;
+
+// Одна операция в пакетном запросе POST /cars/batch.
+// op - тип операции: "create", "update" или "delete".
+// Для create и update передается car, для update и delete - id
+// Пример: {"op":"update","id":3,"car":{"brand":"BMW","year":2020,"price":30000}}
+public class CarOperation {
+    public static final String CREATE = "create";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+
+    private String op;
+    private Long id;
+    private Car car;
+
+    public CarOperation() {
+    }
+
+    public CarOperation(String op, Long id, Car car) {
+        this.op = op;
+        this.id = id;
+        this.car = car;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public void setOp(String op) {
+        this.op = op;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Car getCar() {
+        return car;
+    }
+
+    public void setCar(Car car) {
+        this.car = car;
+    }
+}
@@ -0,0 +1,47 @@
+package model;
+
+// Результат одной операции пакетного запроса.
+// index - позиция операции в запросе, status - "created", "updated", "deleted" или "not_found"
+public class CarOperationResult {
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+    public static final String NOT_FOUND = "not_found";
+
+    private int index;
+    private String op;
+    private String status;
+    private Long id;
+    private Car car;
+
+    public CarOperationResult() {
+    }
+
+    public CarOperationResult(int index, String op, String status, Long id, Car car) {
+        this.index = index;
+        this.op = op;
+        this.status = status;
+        this.id = id;
+        this.car = car;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Car getCar() {
+        return car;
+    }
+}
@@ -0,0 +1,35 @@
+package model;
+
+import java.util.List;
+
+// Одна страница списка автомобилей при постраничном (keyset) чтении.
+// nextAfterId - курсор для следующей страницы: его передают в параметре afterId.
+// Если следующей страницы нет, nextAfterId равен null
+public class CarPage {
+    private List<Car> items;
+    private Long nextAfterId;
+
+    public CarPage() {
+    }
+
+    public CarPage(List<Car> items, Long nextAfterId) {
+        this.items = items;
+        this.nextAfterId = nextAfterId;
+    }
+
+    public List<Car> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Car> items) {
+        this.items = items;
+    }
+
+    public Long getNextAfterId() {
+        return nextAfterId;
+    }
+
+    public void setNextAfterId(Long nextAfterId) {
+        this.nextAfterId = nextAfterId;
+    }
+}
@@ -0,0 +1,35 @@
+package model;
+
+import java.util.List;
+
+// Результат поиска GET /cars?brand=...&sort=...
+// truncated = true, если условиям подходит больше автомобилей, чем limit:
+// клиенту нужно сузить условия или увеличить limit (в пределах PAGE_MAX_LIMIT)
+public class CarSearchResult {
+    private List<Car> items;
+    private boolean truncated;
+
+    public CarSearchResult() {
+    }
+
+    public CarSearchResult(List<Car> items, boolean truncated) {
+        this.items = items;
+        this.truncated = truncated;
+    }
+
+    public List<Car> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Car> items) {
+        this.items = items;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+}
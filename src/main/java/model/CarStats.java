@@ -0,0 +1,41 @@
+package model;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+// Сводная статистика по всем автомобилям для GET /cars/stats:
+// общая статистика цен, статистика по маркам и по годам выпуска,
+// а также перцентили цены ("p50", "p90", "p95", "p99")
+public class CarStats {
+    private PriceStats total;
+    private Map<String, PriceStats> byBrand;
+    private Map<Integer, PriceStats> byYear;
+    private Map<String, BigDecimal> pricePercentiles;
+
+    public CarStats() {
+    }
+
+    public CarStats(PriceStats total, Map<String, PriceStats> byBrand,
+                    Map<Integer, PriceStats> byYear, Map<String, BigDecimal> pricePercentiles) {
+        this.total = total;
+        this.byBrand = byBrand;
+        this.byYear = byYear;
+        this.pricePercentiles = pricePercentiles;
+    }
+
+    public PriceStats getTotal() {
+        return total;
+    }
+
+    public Map<String, PriceStats> getByBrand() {
+        return byBrand;
+    }
+
+    public Map<Integer, PriceStats> getByYear() {
+        return byYear;
+    }
+
+    public Map<String, BigDecimal> getPricePercentiles() {
+        return pricePercentiles;
+    }
+}
@@ -0,0 +1,38 @@
+package model;
+
+import java.math.BigDecimal;
+
+// Статистика цен по группе автомобилей: количество, минимум, максимум и среднее.
+// Автомобили без цены учитываются в count, но не в min/max/avg
+public class PriceStats {
+    private long count;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private BigDecimal avgPrice;
+
+    public PriceStats() {
+    }
+
+    public PriceStats(long count, BigDecimal minPrice, BigDecimal maxPrice, BigDecimal avgPrice) {
+        this.count = count;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.avgPrice = avgPrice;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public BigDecimal getMinPrice() {
+        return minPrice;
+    }
+
+    public BigDecimal getMaxPrice() {
+        return maxPrice;
+    }
+
+    public BigDecimal getAvgPrice() {
+        return avgPrice;
+    }
+}
@@ -0,0 +1,321 @@
+package repository;
+
+import model.Car;
+import model.CarFilter;
+import model.CarOperation;
+import model.CarOperationResult;
+import model.CarStats;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+// Обертка над любым CarRepository (паттерн "декоратор"), которая объединяет одновременные getById.
+// Вызывающие потоки не обращаются к хранилищу сами, а ставят id в очередь и ждут результат.
+// Фоновый поток только собирает группы: забирает из очереди до batchSize разных id (ожидая
+// не дольше windowMicros после первого) и отдает группу исполнителю, который читает ее одним
+// вызовом getByIds - в БД это один запрос WHERE id = ANY(?).
+// Одновременно читается не больше maxConcurrentBatches групп - столько соединений пула они
+// могут занять. Пока все заняты, id копятся в очереди, и следующая группа получается крупнее;
+// медленный запрос задерживает только свою группу, а не все getById приложения.
+// Одинаковые id, ожидающие в очереди, объединяются: сколько бы потоков ни ждали автомобиль 5,
+// он запрашивается один раз. Каждый поток получает свою копию автомобиля - изменения,
+// которые вызывающий код вносит в полученный объект, не видны другим запросам.
+// id снимается с ожидания в момент, когда его группа уходит в хранилище, поэтому поток,
+// вызвавший getById после завершения записи, никогда не получает результат чтения, начатого до нее.
+// Остальные методы передаются хранилищу без изменений
+public class BatchingCarRepository implements CarRepository, AutoCloseable {
+
+    private final CarRepository delegate;
+    private final int batchSize;
+    private final long windowNanos;
+
+    // Ожидающие id и общий результат для всех потоков, запросивших этот id.
+    // Каждый id стоит в очереди не больше одного раза - пока он есть в waiting
+    private final Map<Long, CompletableFuture<Car>> waiting = new ConcurrentHashMap<>();
+    private final BlockingQueue<Long> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    // Потоки, читающие группы, и разрешения на чтение: одно на каждую группу в работе
+    private final ExecutorService readers;
+    private final Semaphore readPermits;
+
+    public BatchingCarRepository(CarRepository delegate, int batchSize, long windowMicros,
+                                 int maxConcurrentBatches) {
+        if (batchSize <= 0 || windowMicros < 0 || maxConcurrentBatches <= 0) {
+            throw new IllegalArgumentException("Некорректные параметры группы: batchSize=" + batchSize
+                    + ", windowMicros=" + windowMicros + ", maxConcurrentBatches=" + maxConcurrentBatches);
+        }
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.readPermits = new Semaphore(maxConcurrentBatches);
+        AtomicInteger counter = new AtomicInteger();
+        this.readers = Executors.newFixedThreadPool(maxConcurrentBatches, r -> {
+            Thread thread = new Thread(r, "car-get-by-id-read-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher = new Thread(this::flushLoop, "car-get-by-id-batch");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public Car getById(long id) {
+        if (closed) {
+            List<Car> found = delegate.getByIds(List.of(id));
+            return found.isEmpty() ? null : copyOf(found.get(0));
+        }
+        CompletableFuture<Car> created = new CompletableFuture<>();
+        CompletableFuture<Car> result = waiting.putIfAbsent(id, created);
+        if (result == null) {
+            result = created;
+            queue.add(id);
+            // close() мог успеть разобрать очередь до нашего add - тогда читаем сами
+            if (closed && queue.remove(id)) {
+                waiting.remove(id, created);
+                read(List.of(id), Map.of(id, created));
+            }
+        }
+        try {
+            // Результат общий для всех, кто ждал этот id, - каждому своя копия
+            Car car = result.get();
+            return car == null ? null : copyOf(car);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    private void flushLoop() {
+        List<Long> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                // Периодически просыпаемся, чтобы заметить close()
+                Long first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+
+                // Добираем группу: пока не наберется batchSize или не истечет окно
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Long next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                // Ждем свободного чтения. Пока ждали, в очереди могли появиться новые id -
+                // добираем их в эту же группу
+                try {
+                    readPermits.acquire();
+                } catch (InterruptedException e) {
+                    flush(batch, false);
+                    throw e;
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+
+                try {
+                    flush(batch, true);
+                } catch (Throwable e) {
+                    // Поток группировки не должен останавливаться из-за одной группы:
+                    // ее участники получают ошибку, а следующие запросы обслуживаются как обычно
+                    readPermits.release();
+                    for (Long id : batch) {
+                        CompletableFuture<Car> future = waiting.remove(id);
+                        if (future != null) {
+                            future.completeExceptionally(e);
+                        }
+                    }
+                } finally {
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Снимает группу с ожидания и отдает ее на чтение исполнителю (async == true,
+    // разрешение на чтение уже взято и освобождается после чтения) или читает сама
+    private void flush(List<Long> batch, boolean async) {
+        // Снимаем id с ожидания до чтения: кто запросит их теперь, попадет в следующую группу
+        List<Long> ids = new ArrayList<>(batch);
+        Map<Long, CompletableFuture<Car>> futures = new HashMap<>(ids.size() * 2);
+        for (Long id : ids) {
+            futures.put(id, waiting.remove(id));
+        }
+        if (!async) {
+            read(ids, futures);
+            return;
+        }
+        try {
+            readers.execute(() -> {
+                try {
+                    read(ids, futures);
+                } finally {
+                    readPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Исполнитель уже остановлен - читаем в этом потоке
+            try {
+                read(ids, futures);
+            } finally {
+                readPermits.release();
+            }
+        }
+    }
+
+    // Читает группу одним getByIds и раздает каждому id его автомобиль (или null, если его нет).
+    // Группа из одного id читается так же - через getByIds, а не getById: отсутствующий автомобиль
+    // дает null при любом размере группы (getById в БД бросает исключение для несуществующего id)
+    private void read(List<Long> ids, Map<Long, CompletableFuture<Car>> futures) {
+        try {
+            Map<Long, Car> found = new HashMap<>(ids.size() * 2);
+            for (Car car : delegate.getByIds(ids)) {
+                found.put(car.getId(), car);
+            }
+            for (Map.Entry<Long, CompletableFuture<Car>> entry : futures.entrySet()) {
+                entry.getValue().complete(found.get(entry.getKey()));
+            }
+        } catch (Throwable e) {
+            // Ошибка группы достается каждому ее участнику - так же, как если бы он читал сам
+            for (CompletableFuture<Car> future : futures.values()) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Останавливает фоновый поток, дочитав то, что уже в очереди.
+    // После остановки getById читает из хранилища напрямую (тем же getByIds)
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            flusher.join();
+            // Дочитываем группы, уже отданные исполнителю
+            readers.shutdown();
+            readers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Long id;
+        while ((id = queue.poll()) != null) {
+            CompletableFuture<Car> future = waiting.remove(id);
+            if (future != null) {
+                read(List.of(id), Map.of(id, future));
+            }
+        }
+    }
+
+    private static Car copyOf(Car car) {
+        return new Car(car.getId(), car.getBrand(), car.getYear(), car.getPrice(), car.getVersion());
+    }
+
+    @Override
+    public List<Car> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public void forEachCar(Consumer<? super Car> action) {
+        delegate.forEachCar(action);
+    }
+
+    @Override
+    public List<Car> getPage(long afterId, int limit) {
+        return delegate.getPage(afterId, limit);
+    }
+
+    @Override
+    public List<Car> find(CarFilter filter) {
+        return delegate.find(filter);
+    }
+
+    @Override
+    public List<Car> getByIds(Collection<Long> ids) {
+        return delegate.getByIds(ids);
+    }
+
+    @Override
+    public Car save(Car car) {
+        return delegate.save(car);
+    }
+
+    @Override
+    public Car update(Car car) {
+        return delegate.update(car);
+    }
+
+    @Override
+    public Car update(Car car, long expectedVersion) {
+        return delegate.update(car, expectedVersion);
+    }
+
+    @Override
+    public Car delete(long id) {
+        return delegate.delete(id);
+    }
+
+    @Override
+    public List<CarOperationResult> applyBatch(List<CarOperation> operations) {
+        return delegate.applyBatch(operations);
+    }
+
+    @Override
+    public long importCars(InputStream in, BulkFormat format, LongConsumer progress) {
+        return delegate.importCars(in, format, progress);
+    }
+
+    @Override
+    public long exportCars(OutputStream out, BulkFormat format, int partitions) {
+        return delegate.exportCars(out, format, partitions);
+    }
+
+    @Override
+    public CarStats getCarStats() {
+        return delegate.getCarStats();
+    }
+
+    @Override
+    public String getCollectionVersion() {
+        return delegate.getCollectionVersion();
+    }
+}
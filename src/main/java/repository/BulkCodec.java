@@ -0,0 +1,188 @@
+package repository;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import model.Car;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+// Чтение и запись автомобилей в форматах BulkFormat по одному, без сборки списка
+final class BulkCodec {
+
+    static final String CSV_HEADER = "brand,year,price";
+
+    // Выгрузка содержит все поля автомобиля
+    static final String EXPORT_CSV_HEADER = "id,brand,year,price,version";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader CAR_READER = MAPPER.readerFor(Car.class);
+    private static final ObjectWriter CAR_WRITER = MAPPER.writerFor(Car.class);
+
+    private BulkCodec() {
+    }
+
+    // Читает поток и передает автомобили в action по мере разбора
+    static void read(InputStream in, BulkFormat format, Consumer<? super Car> action) throws IOException {
+        if (format == BulkFormat.NDJSON) {
+            // readValues разбирает корневые значения одно за другим, пустые строки между ними пропускаются
+            try (MappingIterator<Car> cars = CAR_READER.readValues(in)) {
+                while (cars.hasNextValue()) {
+                    action.accept(cars.nextValue());
+                }
+            }
+            return;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line = reader.readLine();
+        if (line == null) {
+            return;
+        }
+        // Первая строка - заголовок
+        long lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (!line.isEmpty()) {
+                action.accept(parseCsvRow(line, lineNumber));
+            }
+        }
+    }
+
+    // Разбирает строку brand,year,price. Марка может быть в кавычках ("Rolls, Royce", "" внутри - кавычка),
+    // пустая цена - null
+    static Car parseCsvRow(String line, long lineNumber) {
+        String brand;
+        int pos;
+        if (line.startsWith("\"")) {
+            StringBuilder value = new StringBuilder();
+            pos = 1;
+            while (true) {
+                int quote = line.indexOf('"', pos);
+                if (quote < 0) {
+                    throw new IllegalArgumentException("Строка " + lineNumber + ": незакрытая кавычка");
+                }
+                value.append(line, pos, quote);
+                if (quote + 1 < line.length() && line.charAt(quote + 1) == '"') {
+                    value.append('"');
+                    pos = quote + 2;
+                } else {
+                    pos = quote + 1;
+                    break;
+                }
+            }
+            brand = value.toString();
+        } else {
+            pos = line.indexOf(',');
+            if (pos < 0) {
+                throw new IllegalArgumentException("Строка " + lineNumber + ": ожидается brand,year,price");
+            }
+            // Пустое значение без кавычек - NULL, как в COPY
+            brand = pos == 0 ? null : line.substring(0, pos);
+        }
+
+        String[] rest = pos < line.length() && line.charAt(pos) == ',' ? line.substring(pos + 1).split(",", -1) : new String[0];
+        if (rest.length != 2) {
+            throw new IllegalArgumentException("Строка " + lineNumber + ": ожидается brand,year,price");
+        }
+        try {
+            int year = Integer.parseInt(rest[0].trim());
+            BigDecimal price = rest[1].isBlank() ? null : new BigDecimal(rest[1].trim());
+            return new Car(brand, year, price);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Строка " + lineNumber + ": некорректное число", e);
+        }
+    }
+
+    // Дописывает автомобиль строкой CSV brand,year,price с переводом строки
+    static void appendCsvRow(StringBuilder out, Car car) {
+        appendCsvText(out, car.getBrand());
+        out.append(',').append(car.getYear()).append(',');
+        if (car.getPrice() != null) {
+            out.append(car.getPrice().toPlainString());
+        }
+        out.append('\n');
+    }
+
+    // null - пустое значение без кавычек, пустая строка - "" (так их различает COPY)
+    static void appendCsvText(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        if (!value.isEmpty() && value.indexOf(',') < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.append(value);
+            return;
+        }
+        out.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    // Пишет выгрузку автомобилей по одному: NDJSON со всеми полями или CSV с заголовком
+    // id,brand,year,price,version. Ошибки записи - UncheckedIOException, чтобы write
+    // можно было передать в forEachCar
+    static final class ExportWriter {
+        private final Writer out;
+        private final BulkFormat format;
+        private final StringBuilder row = new StringBuilder(64);
+        private long count;
+
+        ExportWriter(OutputStream out, BulkFormat format) {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            this.format = format;
+            if (format == BulkFormat.CSV) {
+                write(EXPORT_CSV_HEADER + "\n");
+            }
+        }
+
+        void write(Car car) {
+            if (format == BulkFormat.NDJSON) {
+                try {
+                    write(CAR_WRITER.writeValueAsString(car) + "\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                row.setLength(0);
+                row.append(car.getId()).append(',');
+                appendCsvText(row, car.getBrand());
+                row.append(',').append(car.getYear()).append(',');
+                if (car.getPrice() != null) {
+                    row.append(car.getPrice().toPlainString());
+                }
+                row.append(',').append(car.getVersion()).append('\n');
+                write(row.toString());
+            }
+            count++;
+        }
+
+        // Дописывает буфер в поток (сам поток не закрывается) и возвращает количество автомобилей
+        long finish() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return count;
+        }
+
+        private void write(String text) {
+            try {
+                out.write(text);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
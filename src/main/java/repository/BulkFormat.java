@@ -0,0 +1,35 @@
+package repository;
+
+// Форматы потоков для массовой загрузки автомобилей (CarRepository.importCars).
+// NDJSON - по одному JSON-объекту автомобиля в строке: {"brand":"Audi","year":2020,"price":25000}
+// CSV - первая строка заголовок brand,year,price, далее по автомобилю в строке.
+// Поля id и version не загружаются: их назначает хранилище
+public enum BulkFormat {
+    NDJSON("application/x-ndjson"),
+    CSV("text/csv");
+
+    private final String mediaType;
+
+    BulkFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String mediaType() {
+        return mediaType;
+    }
+
+    // Формат по имени (ndjson, csv) или по Content-Type запроса.
+    // Возвращает null, если формат не поддерживается
+    public static BulkFormat of(String nameOrContentType) {
+        if (nameOrContentType == null) {
+            return null;
+        }
+        String value = nameOrContentType.split(";", 2)[0].trim();
+        for (BulkFormat format : values()) {
+            if (format.name().equalsIgnoreCase(value) || format.mediaType.equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
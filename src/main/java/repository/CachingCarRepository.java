@@ -0,0 +1,355 @@
+package repository;
+
+import model.Car;
+import model.CarFilter;
+import model.CarOperation;
+import model.CarOperationResult;
+import model.CarStats;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+// Кэширующая обертка над любым CarRepository (паттерн "декоратор").
+// getById и getAll сначала смотрят в кэш и идут в настоящий репозиторий только при промахе.
+// Кэш по id ограничен по размеру (вытесняется давно не используемый - LRU)
+// и по времени жизни записи (TTL). save/update/delete обновляют или сбрасывают
+// затронутые записи, а также снимок getAll
+public class CachingCarRepository implements CarRepository {
+
+    private final CarRepository delegate;
+    private final int maxEntries;
+    private final long ttlMs;
+
+    // LinkedHashMap с accessOrder = true хранит записи в порядке последнего обращения,
+    // а removeEldestEntry удаляет самую старую запись при превышении размера
+    private final LinkedHashMap<Long, Entry> byId;
+
+    // Снимок getAll() и время, до которого он актуален
+    private volatile AllEntry all;
+
+    // Версия коллекции и время, до которого она актуальна.
+    // Сбрасывается вместе со снимком getAll()
+    private volatile VersionEntry collectionVersion;
+
+    // Увеличивается при каждой записи. Значение, прочитанное из репозитория,
+    // кладется в кэш только если за время чтения не было записей -
+    // иначе в кэш могли бы попасть данные, устаревшие еще до записи
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private record Entry(Car car, long expiresAt) {
+    }
+
+    private record AllEntry(List<Car> cars, long expiresAt) {
+    }
+
+    private record VersionEntry(String version, long expiresAt) {
+    }
+
+    public CachingCarRepository(CarRepository delegate, int maxEntries, long ttlMs) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.byId = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > CachingCarRepository.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public List<Car> getAll() {
+        AllEntry current = all;
+        if (current != null && current.expiresAt() > System.currentTimeMillis()) {
+            hits.increment();
+            return current.cars();
+        }
+        misses.increment();
+
+        long startGeneration = generation.get();
+        List<Car> cars = List.copyOf(delegate.getAll());
+        // Проверка поколения и запись снимка - под той же блокировкой, что и сброс в afterWrite:
+        // иначе запись, прошедшая между ними, оставила бы в кэше устаревший список на весь TTL
+        synchronized (byId) {
+            if (generation.get() == startGeneration) {
+                all = new AllEntry(cars, System.currentTimeMillis() + ttlMs);
+            }
+        }
+        return cars;
+    }
+
+    // Если есть актуальный снимок - обходим его, иначе читаем потоком из репозитория
+    // (потоковое чтение в кэш не попадает, иначе пропал бы смысл потоковой выдачи)
+    @Override
+    public void forEachCar(Consumer<? super Car> action) {
+        AllEntry current = all;
+        if (current != null && current.expiresAt() > System.currentTimeMillis()) {
+            hits.increment();
+            current.cars().forEach(action);
+            return;
+        }
+        delegate.forEachCar(action);
+    }
+
+    @Override
+    public List<Car> getPage(long afterId, int limit) {
+        return delegate.getPage(afterId, limit);
+    }
+
+    // Результаты поиска не кэшируются: комбинаций условий слишком много
+    @Override
+    public List<Car> find(CarFilter filter) {
+        return delegate.find(filter);
+    }
+
+    @Override
+    public Car getById(long id) {
+        long now = System.currentTimeMillis();
+        synchronized (byId) {
+            Entry entry = byId.get(id);
+            if (entry != null) {
+                if (entry.expiresAt() > now) {
+                    hits.increment();
+                    return entry.car();
+                }
+                // Запись устарела - удаляем и считаем это вытеснением
+                byId.remove(id);
+                evictions.increment();
+            }
+        }
+        misses.increment();
+
+        long startGeneration = generation.get();
+        Car car = delegate.getById(id);
+        if (car != null) {
+            synchronized (byId) {
+                if (generation.get() == startGeneration) {
+                    byId.put(id, new Entry(car, System.currentTimeMillis() + ttlMs));
+                }
+            }
+        }
+        return car;
+    }
+
+    // Найденные в кэше автомобили отдаются сразу, остальные запрашиваются у репозитория
+    // одним вызовом getByIds и кладутся в кэш так же, как в getById
+    @Override
+    public List<Car> getByIds(Collection<Long> ids) {
+        Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+        Map<Long, Car> found = new HashMap<>();
+        List<Long> missed = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (byId) {
+            for (Long id : uniqueIds) {
+                Entry entry = byId.get(id);
+                if (entry != null && entry.expiresAt() > now) {
+                    hits.increment();
+                    found.put(id, entry.car());
+                    continue;
+                }
+                if (entry != null) {
+                    byId.remove(id);
+                    evictions.increment();
+                }
+                misses.increment();
+                missed.add(id);
+            }
+        }
+
+        if (!missed.isEmpty()) {
+            long startGeneration = generation.get();
+            List<Car> loaded = delegate.getByIds(missed);
+            synchronized (byId) {
+                boolean sameGeneration = generation.get() == startGeneration;
+                long expiresAt = System.currentTimeMillis() + ttlMs;
+                for (Car car : loaded) {
+                    found.put(car.getId(), car);
+                    if (sameGeneration) {
+                        byId.put(car.getId(), new Entry(car, expiresAt));
+                    }
+                }
+            }
+        }
+
+        List<Car> cars = new ArrayList<>(found.size());
+        for (Long id : uniqueIds) {
+            Car car = found.get(id);
+            if (car != null) {
+                cars.add(car);
+            }
+        }
+        return cars;
+    }
+
+    // Записанный автомобиль кладется в кэш, только если за время записи не было других записей
+    // (см. afterWrite) - иначе более старый результат мог бы затереть более новый
+    @Override
+    public Car save(Car car) {
+        long startGeneration = generation.get();
+        Car saved = null;
+        try {
+            saved = delegate.save(car);
+        } finally {
+            afterWrite(saved == null ? null : saved.getId(), startGeneration, saved);
+        }
+        return saved;
+    }
+
+    @Override
+    public Car update(Car car) {
+        long startGeneration = generation.get();
+        Car updated = null;
+        try {
+            updated = delegate.update(car);
+        } finally {
+            afterWrite(car.getId(), startGeneration, updated);
+        }
+        return updated;
+    }
+
+    @Override
+    public Car update(Car car, long expectedVersion) {
+        long startGeneration = generation.get();
+        Car updated = null;
+        try {
+            updated = delegate.update(car, expectedVersion);
+        } finally {
+            afterWrite(car.getId(), startGeneration, updated);
+        }
+        return updated;
+    }
+
+    @Override
+    public Car delete(long id) {
+        try {
+            return delegate.delete(id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public String getCollectionVersion() {
+        VersionEntry current = collectionVersion;
+        if (current != null && current.expiresAt() > System.currentTimeMillis()) {
+            hits.increment();
+            return current.version();
+        }
+        misses.increment();
+
+        long startGeneration = generation.get();
+        String version = delegate.getCollectionVersion();
+        // Как в getAll: устаревшая версия в кэше означала бы 304 для изменившихся данных
+        synchronized (byId) {
+            if (generation.get() == startGeneration) {
+                collectionVersion = new VersionEntry(version, System.currentTimeMillis() + ttlMs);
+            }
+        }
+        return version;
+    }
+
+    // Статистика не кэшируется - она нужна редко и должна быть точной
+    @Override
+    public CarStats getCarStats() {
+        return delegate.getCarStats();
+    }
+
+    @Override
+    public List<CarOperationResult> applyBatch(List<CarOperation> operations) {
+        try {
+            return delegate.applyBatch(operations);
+        } finally {
+            // Пакет мог затронуть много записей - проще сбросить кэш целиком
+            clear();
+        }
+    }
+
+    @Override
+    public long importCars(InputStream in, BulkFormat format, LongConsumer progress) {
+        try {
+            return delegate.importCars(in, format, progress);
+        } finally {
+            // Даже неудачная загрузка по умолчанию могла сохранить часть пакетов
+            clear();
+        }
+    }
+
+    // Выгрузка всегда читает хранилище: весь список в кэше не держим
+    @Override
+    public long exportCars(OutputStream out, BulkFormat format, int partitions) {
+        return delegate.exportCars(out, format, partitions);
+    }
+
+    // Полностью очищает кэш (например, после массовой загрузки в обход репозитория)
+    public void clear() {
+        synchronized (byId) {
+            generation.incrementAndGet();
+            byId.clear();
+            all = null;
+            collectionVersion = null;
+        }
+    }
+
+    // Статистика кэша с момента запуска
+    public Stats getStats() {
+        int size;
+        synchronized (byId) {
+            size = byId.size();
+        }
+        return new Stats(size, maxEntries, hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    // Сбрасывает запись id и снимки после записи и кладет в кэш ее результат written.
+    // startGeneration - поколение до обращения к репозиторию. Если между ним и этим сбросом
+    // прошла другая запись (поколение выросло больше чем на 1), порядок результатов неизвестен,
+    // и в кэш ничего не кладем - следующий getById прочитает актуальное значение
+    private void afterWrite(Long id, long startGeneration, Car written) {
+        synchronized (byId) {
+            boolean onlyWriter = generation.incrementAndGet() == startGeneration + 1;
+            if (id != null) {
+                byId.remove(id);
+            }
+            all = null;
+            collectionVersion = null;
+            if (onlyWriter && written != null && written.getId() != null) {
+                byId.put(written.getId(), new Entry(written, System.currentTimeMillis() + ttlMs));
+            }
+        }
+    }
+
+    private void invalidate(Long id) {
+        synchronized (byId) {
+            generation.incrementAndGet();
+            if (id != null) {
+                byId.remove(id);
+            }
+            all = null;
+            collectionVersion = null;
+        }
+    }
+
+    // size - записей в кэше по id, hits/misses - попадания и промахи (getById и getAll),
+    // evictions - записи, вытесненные по размеру или по истечении TTL
+    public record Stats(int size, int maxEntries, long hits, long misses, long evictions) {
+    }
+}
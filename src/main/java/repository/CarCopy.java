@@ -0,0 +1,250 @@
+package repository;
+
+import model.Car;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+import static constants.Constants.IMPORT_CHUNK_BYTES;
+
+// Массовая загрузка и выгрузка автомобилей командой COPY драйвера PostgreSQL (CopyManager).
+// Загрузка (COPY car FROM STDIN): строки идут в БД одним потоком без отдельного INSERT на каждую,
+// сервер разбирает их сам, а вся загрузка - одна команда и одна транзакция (при ошибке не загружается ничего).
+// Поток читается и передается частями по IMPORT_CHUNK_BYTES, поэтому память не зависит от его размера.
+// Выгрузка (COPY (SELECT ...) TO STDOUT): строки NDJSON или CSV формирует сам сервер,
+// драйвер передает их в выходной поток по мере получения, без объектов Car и ResultSet
+final class CarCopy {
+
+    private static final String EXPORT_SELECT = "SELECT id, brand, year, price, version FROM car";
+
+    // CSV передается в БД как есть, заголовок пропускает сама COPY
+    private static final String COPY_CSV_SQL = "COPY car (brand, year, price) FROM STDIN WITH (FORMAT csv, HEADER true)";
+
+    // NDJSON разбирается здесь и превращается в строки CSV без заголовка
+    private static final String COPY_ROWS_SQL = "COPY car (brand, year, price) FROM STDIN WITH (FORMAT csv)";
+
+    private CarCopy() {
+    }
+
+    // Загружает поток через соединение connection (обертка пула или Hibernate разворачивается до PGConnection).
+    // progress получает примерное количество уже переданных строк, возвращается точное количество загруженных
+    static long copyIn(Connection connection, InputStream in, BulkFormat format, LongConsumer progress)
+            throws SQLException, IOException {
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        CopyIn copy = pgConnection.getCopyAPI().copyIn(format == BulkFormat.CSV ? COPY_CSV_SQL : COPY_ROWS_SQL);
+        try {
+            if (format == BulkFormat.CSV) {
+                copyCsv(copy, in, progress);
+            } else {
+                copyNdjson(copy, in, progress);
+            }
+            return copy.endCopy();
+        } finally {
+            // Ошибка чтения или разбора посреди потока - отменяем COPY, иначе соединение останется в режиме COPY
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    private static void copyCsv(CopyIn copy, InputStream in, LongConsumer progress) throws SQLException, IOException {
+        byte[] buffer = new byte[IMPORT_CHUNK_BYTES];
+        long lines = 0;
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            copy.writeToCopy(buffer, 0, read);
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    lines++;
+                }
+            }
+            // Первая строка - заголовок
+            progress.accept(Math.max(0, lines - 1));
+        }
+    }
+
+    private static void copyNdjson(CopyIn copy, InputStream in, LongConsumer progress) throws SQLException, IOException {
+        StringBuilder rows = new StringBuilder(IMPORT_CHUNK_BYTES + 256);
+        long[] count = new long[1];
+        try {
+            BulkCodec.read(in, BulkFormat.NDJSON, (Car car) -> {
+                BulkCodec.appendCsvRow(rows, car);
+                count[0]++;
+                if (rows.length() >= IMPORT_CHUNK_BYTES) {
+                    write(copy, rows);
+                    progress.accept(count[0]);
+                }
+            });
+            if (rows.length() > 0) {
+                write(copy, rows);
+                progress.accept(count[0]);
+            }
+        } catch (WrappedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void write(CopyIn copy, StringBuilder rows) {
+        byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+        rows.setLength(0);
+        try {
+            copy.writeToCopy(bytes, 0, bytes.length);
+        } catch (SQLException e) {
+            throw new WrappedSQLException(e);
+        }
+    }
+
+    // Выгружает всю таблицу по возрастанию id одной командой COPY через connection.
+    // Возвращает количество выгруженных строк
+    static long copyOut(Connection connection, OutputStream out, BulkFormat format) throws SQLException, IOException {
+        writeExportHeader(out, format);
+        return copyOutRows(connection, out, format, "");
+    }
+
+    // Выгружает таблицу, разбив диапазон id на partitions частей, которые читаются параллельно
+    // по отдельным соединениям пула. Все соединения читают один и тот же снимок данных:
+    // ведущее соединение экспортирует его (pg_export_snapshot), остальные подключаются к нему
+    // (SET TRANSACTION SNAPSHOT) - так же работает параллельный pg_dump. Первая часть пишется
+    // сразу в out, остальные - во временные файлы, которые затем дописываются в out по порядку.
+    // Диапазоны делятся поровну по значениям id, а не по количеству строк
+    static long copyOutParallel(ConnectionPool pool, OutputStream out, BulkFormat format, int partitions)
+            throws SQLException, IOException {
+        try (Connection leader = pool.getConnection()) {
+            leader.setAutoCommit(false);
+            String snapshot;
+            long minId;
+            long maxId;
+            try (Statement statement = leader.createStatement()) {
+                statement.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY");
+                try (ResultSet rs = statement.executeQuery("SELECT pg_export_snapshot(), min(id), max(id) FROM car")) {
+                    rs.next();
+                    snapshot = rs.getString(1);
+                    minId = rs.getLong(2);
+                    maxId = rs.getLong(3);
+                    if (rs.wasNull()) {
+                        // Таблица пуста
+                        writeExportHeader(out, format);
+                        leader.rollback();
+                        return 0;
+                    }
+                }
+            }
+
+            long span = (maxId - minId) / partitions + 1;
+            writeExportHeader(out, format);
+
+            AtomicInteger threadNumber = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(partitions - 1, task -> {
+                Thread thread = new Thread(task, "car-export-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            List<Path> files = new ArrayList<>();
+            List<Future<Long>> parts = new ArrayList<>();
+            try {
+                for (int i = 1; i < partitions; i++) {
+                    long from = minId + i * span;
+                    String where = i == partitions - 1
+                            ? " WHERE id >= " + from
+                            : " WHERE id >= " + from + " AND id < " + (from + span);
+                    Path file = Files.createTempFile("car-export-", ".part");
+                    files.add(file);
+                    parts.add(executor.submit(() -> copyPartition(pool, snapshot, format, where, file)));
+                }
+
+                long total = copyOutRows(leader, out, format, " WHERE id < " + (minId + span));
+                for (int i = 0; i < parts.size(); i++) {
+                    total += parts.get(i).get();
+                    Files.copy(files.get(i), out);
+                }
+                // Транзакция ведущего соединения держит снимок, пока все части не прочитаны
+                leader.rollback();
+                return total;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Выгрузка прервана", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException sqlException) {
+                    throw sqlException;
+                }
+                if (cause instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new RuntimeException(cause);
+            } finally {
+                executor.shutdownNow();
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    // Читает одну часть таблицы в снимке snapshot во временный файл
+    private static long copyPartition(ConnectionPool pool, String snapshot, BulkFormat format, String where, Path file)
+            throws SQLException, IOException {
+        try (Connection connection = pool.getConnection();
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), IMPORT_CHUNK_BYTES)) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY");
+                // Идентификатор снимка выдан самой БД, подставлять его в текст запроса безопасно
+                statement.execute("SET TRANSACTION SNAPSHOT '" + snapshot + "'");
+            }
+            long rows = copyOutRows(connection, out, format, where);
+            connection.rollback();
+            return rows;
+        }
+    }
+
+    // NDJSON: каждую строку формирует row_to_json. Формат csv с управляющими символами в роли кавычки
+    // и разделителя выводит JSON без изменений (текстовый формат COPY удвоил бы обратные слэши),
+    // а переводы строк внутри значений row_to_json уже экранированы
+    private static long copyOutRows(Connection connection, OutputStream out, BulkFormat format, String where)
+            throws SQLException, IOException {
+        String select = EXPORT_SELECT + where + " ORDER BY id";
+        String sql = format == BulkFormat.CSV
+                ? "COPY (" + select + ") TO STDOUT WITH (FORMAT csv)"
+                : "COPY (SELECT row_to_json(c) FROM (" + select + ") c) TO STDOUT "
+                + "WITH (FORMAT csv, QUOTE e'\\x01', DELIMITER e'\\x02')";
+        return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(sql, out);
+    }
+
+    private static void writeExportHeader(OutputStream out, BulkFormat format) throws IOException {
+        if (format == BulkFormat.CSV) {
+            out.write((BulkCodec.EXPORT_CSV_HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // Передает SQLException из лямбды разбора наружу
+    private static final class WrappedSQLException extends RuntimeException {
+        private WrappedSQLException(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+}
@@ -1,7 +1,26 @@
 package repository;
 import model.Car;
+import model.CarFilter;
+import model.CarOperation;
+import model.CarOperationResult;
+import model.CarStats;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import static constants.Constants.BATCH_MAX_OPERATIONS;
 
 public interface CarRepository {
     List<Car> getAll();
@@ -9,10 +28,169 @@ public interface CarRepository {
 
     Car getById(long id);
 
+    // Метод для поиска нескольких автомобилей по id одним обращением к хранилищу.
+    // Возвращает найденные автомобили в порядке ids (повторяющиеся id - один раз),
+    // отсутствующих id в результате нет. Реализации на БД выполняют один запрос.
+    // Реализация по умолчанию ищет каждый id через getById
+    default List<Car> getByIds(Collection<Long> ids) {
+        List<Car> cars = new ArrayList<>(ids.size());
+        for (Long id : new LinkedHashSet<>(ids)) {
+            Car car = getById(id);
+            if (car != null) {
+                cars.add(car);
+            }
+        }
+        return cars;
+    }
+
     // Метод для обновления
     Car update(Car car);
 
+    // Метод для условного обновления (If-Match): обновляет автомобиль, только если его версия
+    // в хранилище равна expectedVersion. Возвращает null, если автомобиля нет,
+    // и бросает VersionConflictException, если версия уже другая
+    Car update(Car car, long expectedVersion);
+
     // Метод для удаления
     Car delete(long id);
     // boolean delete(Long id);
+
+    // Метод для потокового обхода всех автомобилей по возрастанию id.
+    // Автомобили передаются в action по одному и не собираются в список,
+    // поэтому реализации на БД могут читать таблицу курсором
+    default void forEachCar(Consumer<? super Car> action) {
+        getAll().forEach(action);
+    }
+
+    // Метод для постраничного чтения (keyset pagination):
+    // до limit автомобилей с id > afterId по возрастанию id.
+    // В отличие от OFFSET, стоимость страницы не зависит от ее "глубины"
+    List<Car> getPage(long afterId, int limit);
+
+    // Метод для поиска автомобилей по условиям фильтра с сортировкой.
+    // Реализации на БД выполняют фильтрацию и сортировку в SQL, по индексам
+    List<Car> find(CarFilter filter);
+
+    // Метод для пакетного применения операций create/update/delete в порядке их следования.
+    // Реализации на БД выполняют весь пакет в одной транзакции: при ошибке не применяется ничего.
+    // Реализация по умолчанию просто применяет операции по одной
+    default List<CarOperationResult> applyBatch(List<CarOperation> operations) {
+        List<CarOperationResult> results = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            CarOperation operation = operations.get(i);
+            switch (operation.getOp()) {
+                case CarOperation.CREATE -> {
+                    Car saved = save(operation.getCar());
+                    results.add(new CarOperationResult(i, operation.getOp(), CarOperationResult.CREATED, saved.getId(), saved));
+                }
+                case CarOperation.UPDATE -> {
+                    operation.getCar().setId(operation.getId());
+                    Car updated = update(operation.getCar());
+                    results.add(updated == null
+                            ? new CarOperationResult(i, operation.getOp(), CarOperationResult.NOT_FOUND, operation.getId(), null)
+                            : new CarOperationResult(i, operation.getOp(), CarOperationResult.UPDATED, operation.getId(), updated));
+                }
+                case CarOperation.DELETE -> {
+                    Car deleted = delete(operation.getId());
+                    results.add(deleted == null
+                            ? new CarOperationResult(i, operation.getOp(), CarOperationResult.NOT_FOUND, operation.getId(), null)
+                            : new CarOperationResult(i, operation.getOp(), CarOperationResult.DELETED, operation.getId(), deleted));
+                }
+                default -> throw new IllegalArgumentException("Неизвестная операция: " + operation.getOp());
+            }
+        }
+        return results;
+    }
+
+    // Метод для массовой загрузки автомобилей из потока NDJSON или CSV (см. BulkFormat).
+    // Поток читается частями, поэтому память не зависит от количества автомобилей.
+    // progress получает количество уже загруженных автомобилей, возвращается итоговое количество.
+    // Реализации на PostgreSQL передают поток в COPY car FROM STDIN одной транзакцией.
+    // Реализация по умолчанию разбирает поток и сохраняет автомобили пакетами applyBatch:
+    // при ошибке уже сохраненные пакеты остаются в хранилище
+    default long importCars(InputStream in, BulkFormat format, LongConsumer progress) {
+        List<CarOperation> chunk = new ArrayList<>(BATCH_MAX_OPERATIONS);
+        long[] imported = new long[1];
+        Runnable flush = () -> {
+            imported[0] += applyBatch(chunk).size();
+            chunk.clear();
+            progress.accept(imported[0]);
+        };
+        try {
+            BulkCodec.read(in, format, car -> {
+                chunk.add(new CarOperation(CarOperation.CREATE, null, car));
+                if (chunk.size() == BATCH_MAX_OPERATIONS) {
+                    flush.run();
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!chunk.isEmpty()) {
+            flush.run();
+        }
+        return imported[0];
+    }
+
+    // Метод для выгрузки всех автомобилей по возрастанию id в поток NDJSON или CSV (см. BulkFormat).
+    // partitions - на сколько диапазонов id разбить чтение: реализации на БД могут читать их
+    // параллельно по разным соединениям и склеивать по порядку. Возвращает количество выгруженных.
+    // Реализация по умолчанию пишет автомобили по одному из forEachCar, partitions не учитывается
+    default long exportCars(OutputStream out, BulkFormat format, int partitions) {
+        BulkCodec.ExportWriter writer = new BulkCodec.ExportWriter(out, format);
+        try {
+            forEachCar(writer::write);
+            return writer.finish();
+        } catch (UncheckedIOException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // Метод для получения статистики цен: всего, по маркам, по годам и перцентили.
+    // Реализации на БД считают ее в БД (GROUP BY), клиенту уходит только результат.
+    // Реализация по умолчанию считает статистику за один проход по всем автомобилям
+    default CarStats getCarStats() {
+        PriceAccumulator total = new PriceAccumulator();
+        Map<String, PriceAccumulator> byBrand = new TreeMap<>();
+        Map<Integer, PriceAccumulator> byYear = new TreeMap<>();
+        List<BigDecimal> prices = new ArrayList<>();
+
+        forEachCar(car -> {
+            total.add(car.getPrice());
+            if (car.getBrand() != null) {
+                byBrand.computeIfAbsent(car.getBrand(), key -> new PriceAccumulator()).add(car.getPrice());
+            }
+            byYear.computeIfAbsent(car.getYear(), key -> new PriceAccumulator()).add(car.getPrice());
+            if (car.getPrice() != null) {
+                prices.add(car.getPrice());
+            }
+        });
+
+        BigDecimal[] sortedPrices = prices.toArray(new BigDecimal[0]);
+        Arrays.sort(sortedPrices);
+        return new CarStats(total.toStats(), PriceAccumulator.toStats(byBrand),
+                PriceAccumulator.toStats(byYear), PriceAccumulator.percentiles(sortedPrices));
+    }
+
+    // Версия всей коллекции: меняется при любом добавлении, изменении или удалении автомобиля.
+    // Нужна для ETag списка, чтобы не читать и не сериализовать все автомобили.
+    // Реализация по умолчанию - количество и сумма хэшей пар (id, version) за один проход.
+    // id и version перемешиваются по отдельности: у id * 31 + version совпадали бы,
+    // например, (1, 31) и (2, 0). Сумма вместо XOR: одинаковые хэши не взаимоуничтожаются
+    default String getCollectionVersion() {
+        long[] countAndHash = new long[2];
+        forEachCar(car -> {
+            countAndHash[0]++;
+            countAndHash[1] += mix(mix(car.getId()) ^ car.getVersion());
+        });
+        return countAndHash[0] + "-" + Long.toHexString(countAndHash[1]);
+    }
+
+    // Перемешивание битов (финализатор SplitMix64), чтобы близкие пары (id, version)
+    // давали далекие хэши
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
 }
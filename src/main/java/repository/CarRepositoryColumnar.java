@@ -0,0 +1,470 @@
+package repository;
+
+import model.Car;
+import model.CarFilter;
+import model.CarStats;
+import model.PriceStats;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Хранилище автомобилей в памяти "по колонкам" для аналитических узлов.
+// Вместо миллионов объектов Car (с Long id и BigDecimal ценой внутри) каждое поле
+// хранится в своем массиве примитивов: long[] id, int[] год, long[] цена в центах,
+// int[] код марки, long[] версия. Марки кодируются словарем: каждая уникальная строка хранится один раз.
+// Объекты Car создаются только на выходе из репозитория.
+//
+// Строка с номером slot - это ids[slot], years[slot], priceCents[slot], brandCodes[slot].
+// id выдаются по возрастанию и добавляются в конец, поэтому массив ids отсортирован
+// и поиск по id - двоичный. Удаленные строки помечаются в BitSet и вычищаются
+// при уплотнении, когда их становится больше половины
+public class CarRepositoryColumnar implements CarRepository {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Код "марка не задана" и цена "не задана"
+    private static final int NO_BRAND = -1;
+    private static final long NO_PRICE = Long.MIN_VALUE;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int[] years = new int[INITIAL_CAPACITY];
+    private long[] priceCents = new long[INITIAL_CAPACITY];
+    private int[] brandCodes = new int[INITIAL_CAPACITY];
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private BitSet deleted = new BitSet();
+
+    // Количество занятых строк (включая удаленные) и количество удаленных
+    private int size;
+    private int deletedCount;
+    private long currentId;
+
+    // Счетчик изменений для версии коллекции и случайная "эпоха" экземпляра
+    private long modCount;
+    private final long epoch = new Random().nextLong();
+
+    // Словарь марок: код -> строка и строка -> код
+    private final List<String> brandDictionary = new ArrayList<>();
+    private final Map<String, Integer> brandToCode = new HashMap<>();
+
+    @Override
+    public List<Car> getAll() {
+        lock.readLock().lock();
+        try {
+            List<Car> cars = new ArrayList<>(size - deletedCount);
+            for (int slot = 0; slot < size; slot++) {
+                if (!deleted.get(slot)) {
+                    cars.add(toCar(slot));
+                }
+            }
+            return cars;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachCar(Consumer<? super Car> action) {
+        // Автомобили создаются порциями под блокировкой, а отдаются в action без нее,
+        // чтобы медленный потребитель (сеть) не задерживал запись
+        long afterId = 0;
+        List<Car> page;
+        do {
+            page = getPage(afterId, INITIAL_CAPACITY);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == INITIAL_CAPACITY);
+    }
+
+    @Override
+    public List<Car> getPage(long afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            int slot = Arrays.binarySearch(ids, 0, size, afterId);
+            // Нашли afterId - начинаем со следующей строки, иначе с точки вставки
+            slot = slot >= 0 ? slot + 1 : -slot - 1;
+
+            List<Car> cars = new ArrayList<>(Math.min(limit, size - slot));
+            for (; slot < size && cars.size() < limit; slot++) {
+                if (!deleted.get(slot)) {
+                    cars.add(toCar(slot));
+                }
+            }
+            return cars;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Car> find(CarFilter filter) {
+        lock.readLock().lock();
+        try {
+            // Условия переводим в примитивы один раз, дальше сравниваем только числа
+            int brandCode = NO_BRAND;
+            if (filter.getBrand() != null) {
+                Integer code = brandToCode.get(filter.getBrand());
+                if (code == null) {
+                    return new ArrayList<>();
+                }
+                brandCode = code;
+            }
+            int minYear = filter.getMinYear() == null ? Integer.MIN_VALUE : filter.getMinYear();
+            int maxYear = filter.getMaxYear() == null ? Integer.MAX_VALUE : filter.getMaxYear();
+            boolean priceFiltered = filter.getMinPrice() != null || filter.getMaxPrice() != null;
+            long minCents = filter.getMinPrice() == null ? Long.MIN_VALUE : toCents(filter.getMinPrice(), RoundingMode.CEILING);
+            long maxCents = filter.getMaxPrice() == null ? Long.MAX_VALUE : toCents(filter.getMaxPrice(), RoundingMode.FLOOR);
+
+            // Строки уже упорядочены по id, поэтому при сортировке по id
+            // можно остановиться, набрав limit строк
+            boolean naturalOrder = "id".equals(filter.getSortBy()) && !filter.isDescending();
+            int limit = filter.getLimit() == null ? Integer.MAX_VALUE : filter.getLimit();
+
+            List<Car> cars = new ArrayList<>();
+            for (int slot = 0; slot < size; slot++) {
+                if (deleted.get(slot)
+                        || (filter.getBrand() != null && brandCodes[slot] != brandCode)
+                        || years[slot] < minYear || years[slot] > maxYear
+                        || (priceFiltered && (priceCents[slot] == NO_PRICE
+                        || priceCents[slot] < minCents || priceCents[slot] > maxCents))) {
+                    continue;
+                }
+                cars.add(toCar(slot));
+                if (naturalOrder && cars.size() == limit) {
+                    return cars;
+                }
+            }
+
+            if (!naturalOrder) {
+                cars.sort(filter.comparator());
+                if (cars.size() > limit) {
+                    cars = new ArrayList<>(cars.subList(0, limit));
+                }
+            }
+            return cars;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Статистика за один проход по колонкам года, цены и кода марки - без создания Car.
+    // Цены складываются в центах как long, перцентили берутся из отсортированной копии колонки цен
+    @Override
+    public CarStats getCarStats() {
+        lock.readLock().lock();
+        try {
+            CentsAccumulator total = new CentsAccumulator();
+            CentsAccumulator[] byBrandCode = new CentsAccumulator[brandDictionary.size()];
+            Map<Integer, CentsAccumulator> byYear = new TreeMap<>();
+            long[] prices = new long[size - deletedCount];
+            int priced = 0;
+
+            for (int slot = 0; slot < size; slot++) {
+                if (deleted.get(slot)) {
+                    continue;
+                }
+                long cents = priceCents[slot];
+                total.add(cents);
+                int code = brandCodes[slot];
+                if (code != NO_BRAND) {
+                    if (byBrandCode[code] == null) byBrandCode[code] = new CentsAccumulator();
+                    byBrandCode[code].add(cents);
+                }
+                byYear.computeIfAbsent(years[slot], key -> new CentsAccumulator()).add(cents);
+                if (cents != NO_PRICE) {
+                    prices[priced++] = cents;
+                }
+            }
+
+            Map<String, PriceStats> brandStats = new TreeMap<>();
+            for (int code = 0; code < byBrandCode.length; code++) {
+                if (byBrandCode[code] != null) {
+                    brandStats.put(brandDictionary.get(code), byBrandCode[code].toStats());
+                }
+            }
+            Map<Integer, PriceStats> yearStats = new TreeMap<>();
+            byYear.forEach((year, accumulator) -> yearStats.put(year, accumulator.toStats()));
+
+            Arrays.sort(prices, 0, priced);
+            Map<String, BigDecimal> percentiles = new LinkedHashMap<>();
+            for (double p : PriceAccumulator.PERCENTILES) {
+                percentiles.put(PriceAccumulator.percentileName(p),
+                        priced == 0 ? null : BigDecimal.valueOf(prices[PriceAccumulator.rankIndex(p, priced)], 2));
+            }
+
+            return new CarStats(total.toStats(), brandStats, yearStats, percentiles);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Car save(Car car) {
+        lock.writeLock().lock();
+        try {
+            // Сначала кодируем поля: если цена не помещается в колонку, хранилище не меняется
+            Row row = encode(car);
+            ensureCapacity(size + 1);
+            long id = ++currentId;
+            int slot = size++;
+            ids[slot] = id;
+            versions[slot] = 0;
+            write(slot, row);
+            modCount++;
+            car.setId(id);
+            car.setVersion(0);
+            return car;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Car getById(long id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(id);
+            return slot < 0 ? null : toCar(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Все id ищутся под одной блокировкой чтения
+    @Override
+    public List<Car> getByIds(Collection<Long> ids) {
+        List<Car> cars = new ArrayList<>(ids.size());
+        lock.readLock().lock();
+        try {
+            for (Long id : new LinkedHashSet<>(ids)) {
+                int slot = slotOf(id);
+                if (slot >= 0) {
+                    cars.add(toCar(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return cars;
+    }
+
+    @Override
+    public Car update(Car car) {
+        if (car.getId() == null) {
+            throw new IllegalArgumentException("ID не может быть null");
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(car.getId());
+            if (slot < 0) {
+                return null;
+            }
+            write(slot, encode(car));
+            versions[slot]++;
+            modCount++;
+            return toCar(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Car update(Car car, long expectedVersion) {
+        if (car.getId() == null) {
+            throw new IllegalArgumentException("ID не может быть null");
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(car.getId());
+            if (slot < 0) {
+                return null;
+            }
+            if (versions[slot] != expectedVersion) {
+                throw new VersionConflictException(car.getId(), expectedVersion, versions[slot]);
+            }
+            write(slot, encode(car));
+            versions[slot]++;
+            modCount++;
+            return toCar(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Car delete(long id) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(id);
+            if (slot < 0) {
+                return null;
+            }
+            Car removed = toCar(slot);
+            deleted.set(slot);
+            deletedCount++;
+            modCount++;
+            if (deletedCount > INITIAL_CAPACITY && deletedCount > size / 2) {
+                compact();
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getCollectionVersion() {
+        lock.readLock().lock();
+        try {
+            return Long.toHexString(epoch) + "-" + modCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Количество автомобилей в хранилище
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ===== Внутренние методы. Вызываются под блокировкой =====
+
+    // Номер строки живого автомобиля с данным id или -1
+    private int slotOf(long id) {
+        int slot = Arrays.binarySearch(ids, 0, size, id);
+        return slot >= 0 && !deleted.get(slot) ? slot : -1;
+    }
+
+    // Поля автомобиля (кроме id), уже закодированные для колонок
+    private record Row(int year, long priceCents, int brandCode) {
+    }
+
+    // Кодирует поля автомобиля, ничего не меняя в колонках.
+    // Цена, которая не помещается в long копеек, отклоняется здесь - до записи
+    private Row encode(Car car) {
+        long cents;
+        try {
+            cents = car.getPrice() == null ? NO_PRICE : toCents(car.getPrice(), RoundingMode.HALF_UP);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Цена вне допустимого диапазона: " + car.getPrice(), e);
+        }
+        return new Row(car.getYear(), cents, encodeBrand(car.getBrand()));
+    }
+
+    // Раскладывает закодированные поля по колонкам. Исключений не бросает,
+    // поэтому строка всегда записывается целиком
+    private void write(int slot, Row row) {
+        years[slot] = row.year();
+        priceCents[slot] = row.priceCents();
+        brandCodes[slot] = row.brandCode();
+    }
+
+    // Собирает объект Car из колонок - только на выходе из репозитория
+    private Car toCar(int slot) {
+        int code = brandCodes[slot];
+        long cents = priceCents[slot];
+        return new Car(ids[slot],
+                code == NO_BRAND ? null : brandDictionary.get(code),
+                years[slot],
+                cents == NO_PRICE ? null : BigDecimal.valueOf(cents, 2),
+                versions[slot]);
+    }
+
+    private int encodeBrand(String brand) {
+        if (brand == null) {
+            return NO_BRAND;
+        }
+        Integer code = brandToCode.get(brand);
+        if (code == null) {
+            code = brandDictionary.size();
+            brandDictionary.add(brand);
+            brandToCode.put(brand, code);
+        }
+        return code;
+    }
+
+    private static long toCents(BigDecimal price, RoundingMode roundingMode) {
+        return price.setScale(2, roundingMode).movePointRight(2).longValueExact();
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        years = Arrays.copyOf(years, capacity);
+        priceCents = Arrays.copyOf(priceCents, capacity);
+        brandCodes = Arrays.copyOf(brandCodes, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+    }
+
+    // Сдвигает живые строки в начало массивов, сохраняя порядок id
+    private void compact() {
+        int target = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (deleted.get(slot)) {
+                continue;
+            }
+            ids[target] = ids[slot];
+            years[target] = years[slot];
+            priceCents[target] = priceCents[slot];
+            brandCodes[target] = brandCodes[slot];
+            versions[target] = versions[slot];
+            target++;
+        }
+        size = target;
+        deletedCount = 0;
+        deleted = new BitSet();
+    }
+
+    // Накопитель статистики цен в центах (примитивы вместо BigDecimal)
+    private static final class CentsAccumulator {
+        private long count;
+        private long pricedCount;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        void add(long cents) {
+            count++;
+            if (cents == NO_PRICE) {
+                return;
+            }
+            pricedCount++;
+            sum += cents;
+            min = Math.min(min, cents);
+            max = Math.max(max, cents);
+        }
+
+        PriceStats toStats() {
+            if (pricedCount == 0) {
+                return new PriceStats(count, null, null, null);
+            }
+            return new PriceStats(count, BigDecimal.valueOf(min, 2), BigDecimal.valueOf(max, 2),
+                    BigDecimal.valueOf(sum, 2).divide(BigDecimal.valueOf(pricedCount), 2, RoundingMode.HALF_UP));
+        }
+    }
+}
@@ -1,27 +1,127 @@
 package repository;
 
-import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
 import model.Car;
-import org.hibernate.cfg.Configuration;
+import model.CarFilter;
+import model.CarOperation;
+import model.CarOperationResult;
+import model.CarStats;
+import model.PriceStats;
+import org.hibernate.ReadOnlyMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.query.QueryProducer;
+import org.hibernate.query.SelectionQuery;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import static constants.Constants.BATCH_JDBC_SIZE;
+import static constants.Constants.STREAM_FETCH_SIZE;
 
 public class CarRepositoryHibernate implements CarRepository {
 
-    private EntityManager entityManager;
+    // Общая потокобезопасная фабрика. Каждая операция открывает собственную
+    // короткую сессию, поэтому потоки Томката не делят один EntityManager,
+    // а кэш первого уровня живет только в рамках одной операции
+    protected final SessionFactory sessionFactory;
 
     public CarRepositoryHibernate() {
+        this(HibernateSessionFactory.getDefault());
+    }
 
-        entityManager = new Configuration()
-                .configure("hibernate/postgres.cfg.xml")
-                .buildSessionFactory()
-                .createEntityManager();
+    public CarRepositoryHibernate(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
     }
 
 
     @Override
     public List<Car> getAll() {
-        return entityManager.createQuery("from Car", Car.class).getResultList();
+        // Только чтение: Hibernate не хранит снимки сущностей для dirty-checking
+        return sessionFactory.fromSession(session -> session
+                .createQuery("from Car", Car.class)
+                .setReadOnly(true)
+                .getResultList());
+    }
+
+    @Override
+    public List<Car> getPage(long afterId, int limit) {
+        return sessionFactory.fromSession(session -> session
+                .createQuery("from Car where id > :afterId order by id", Car.class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(limit)
+                .setReadOnly(true)
+                .getResultList());
+    }
+
+    @Override
+    public List<Car> find(CarFilter filter) {
+        return sessionFactory.fromSession(session -> findQuery(session, filter)
+                .setReadOnly(true)
+                .getResultList());
+    }
+
+    // Запрос HQL собирается только из заданных условий,
+    // значения передаются именованными параметрами.
+    // Общий для обычной сессии и StatelessSession
+    protected static SelectionQuery<Car> findQuery(QueryProducer session, CarFilter filter) {
+        StringBuilder hql = new StringBuilder("from Car c where 1 = 1");
+        if (filter.getBrand() != null) hql.append(" and c.brand = :brand");
+        if (filter.getMinYear() != null) hql.append(" and c.year >= :minYear");
+        if (filter.getMaxYear() != null) hql.append(" and c.year <= :maxYear");
+        if (filter.getMinPrice() != null) hql.append(" and c.price >= :minPrice");
+        if (filter.getMaxPrice() != null) hql.append(" and c.price <= :maxPrice");
+
+        // Поле сортировки уже проверено по белому списку CarFilter.SORT_FIELDS
+        hql.append(" order by c.").append(filter.getSortBy());
+        if (filter.isDescending()) {
+            hql.append(" desc");
+        }
+        hql.append(", c.id");
+
+        SelectionQuery<Car> query = session.createSelectionQuery(hql.toString(), Car.class);
+        if (filter.getBrand() != null) query.setParameter("brand", filter.getBrand());
+        if (filter.getMinYear() != null) query.setParameter("minYear", filter.getMinYear());
+        if (filter.getMaxYear() != null) query.setParameter("maxYear", filter.getMaxYear());
+        if (filter.getMinPrice() != null) query.setParameter("minPrice", filter.getMinPrice());
+        if (filter.getMaxPrice() != null) query.setParameter("maxPrice", filter.getMaxPrice());
+        if (filter.getLimit() != null) query.setMaxResults(filter.getLimit());
+        return query;
+    }
+
+    @Override
+    public void forEachCar(Consumer<? super Car> action) {
+        // Курсор PostgreSQL работает только внутри транзакции, поэтому читаем в транзакции.
+        // Каждые STREAM_FETCH_SIZE строк очищаем сессию, чтобы она не накапливала сущности
+        sessionFactory.inTransaction(session -> {
+            try (ScrollableResults<Car> cars = session
+                    .createQuery("from Car order by id", Car.class)
+                    .setReadOnly(true)
+                    .setFetchSize(STREAM_FETCH_SIZE)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                int count = 0;
+                while (cars.next()) {
+                    action.accept(cars.get());
+                    if (++count % STREAM_FETCH_SIZE == 0) {
+                        session.clear();
+                    }
+                }
+            }
+        });
     }
 
     @Override
@@ -29,41 +129,230 @@ public class CarRepositoryHibernate implements CarRepository {
         if (car == null) {
             return null;
         }
-        entityManager.getTransaction().begin();
-        entityManager.persist(car);
-        entityManager.getTransaction().commit();
+        sessionFactory.inTransaction(session -> session.persist(car));
 
         return car;
     }
 
     @Override
     public Car getById(long id) {
-        return entityManager.find(Car.class, id);
+        return sessionFactory.fromSession(session -> session.find(Car.class, id));
+    }
+
+    // findMultiple загружает все id одним запросом (пакетами по hibernate.jdbc.batch_size, если id много)
+    // и возвращает список в порядке ids с null на месте отсутствующих.
+    // Это замена byMultipleIds(...).multiLoad(...) в Hibernate 7
+    @Override
+    public List<Car> getByIds(Collection<Long> ids) {
+        List<Long> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        if (uniqueIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Car> cars = sessionFactory.fromSession(session ->
+                session.findMultiple(Car.class, uniqueIds, ReadOnlyMode.READ_ONLY));
+        return withoutNulls(cars);
+    }
+
+    protected static List<Car> withoutNulls(List<Car> cars) {
+        List<Car> found = new ArrayList<>(cars.size());
+        for (Car car : cars) {
+            if (car != null) {
+                found.add(car);
+            }
+        }
+        return found;
     }
 
+    // Поля переносятся в загруженную сущность, а не через merge(): у пришедшего от клиента
+    // объекта версия может быть любой, а версию сущности Hibernate увеличит сам при flush
     @Override
     public Car update(Car car) {
-        Car updatedCar = entityManager.find(Car.class, car.getId());
-        if(updatedCar == null) {
-            return null;
+        return sessionFactory.fromTransaction(session -> {
+            Car updatedCar = session.find(Car.class, car.getId());
+            if (updatedCar == null) {
+                return null;
+            }
+            copyFields(car, updatedCar);
+            return updatedCar;
+        });
+    }
+
+    // Версия проверяется дважды: при чтении (сразу отвечаем конфликтом)
+    // и в самом UPDATE ... where version = ? (защита от параллельной записи между ними)
+    @Override
+    public Car update(Car car, long expectedVersion) {
+        try {
+            return sessionFactory.fromTransaction(session -> {
+                Car updatedCar = session.find(Car.class, car.getId());
+                if (updatedCar == null) {
+                    return null;
+                }
+                if (updatedCar.getVersion() != expectedVersion) {
+                    throw new VersionConflictException(car.getId(), expectedVersion, updatedCar.getVersion());
+                }
+                copyFields(car, updatedCar);
+                return updatedCar;
+            });
+        } catch (OptimisticLockException | StaleStateException e) {
+            throw new VersionConflictException(car.getId(), expectedVersion, -1);
         }
-        entityManager.getTransaction().begin();
-        entityManager.merge(car);
-        entityManager.getTransaction().commit();
+    }
 
-        return updatedCar;
+    private static void copyFields(Car from, Car to) {
+        to.setBrand(from.getBrand());
+        to.setYear(from.getYear());
+        to.setPrice(from.getPrice());
     }
 
     @Override
     public Car delete(long id) {
-        Car carToDelete = entityManager.find(Car.class, id);
-        if(carToDelete == null) {
-            return null;
-        }
-        entityManager.getTransaction().begin();
-        entityManager.remove(carToDelete);
-        entityManager.getTransaction().commit();
+        return sessionFactory.fromTransaction(session -> {
+            Car carToDelete = session.find(Car.class, id);
+            if (carToDelete == null) {
+                return null;
+            }
+            session.remove(carToDelete);
+
+            return carToDelete;
+        });
+    }
+
+    // Весь пакет выполняется в одной сессии и одной транзакции.
+    // INSERT/UPDATE/DELETE Hibernate группирует в JDBC-пакеты (hibernate.jdbc.batch_size),
+    // а каждые BATCH_JDBC_SIZE операций сбрасывает их в БД и очищает сессию
+    @Override
+    public List<CarOperationResult> applyBatch(List<CarOperation> operations) {
+        return sessionFactory.fromTransaction(session -> {
+            List<CarOperationResult> results = new ArrayList<>(operations.size());
+
+            for (int i = 0; i < operations.size(); i++) {
+                CarOperation operation = operations.get(i);
+                String op = operation.getOp();
+
+                switch (op) {
+                    case CarOperation.CREATE -> {
+                        Car car = operation.getCar();
+                        car.setId(null);
+                        // С генератором на последовательности id присваивается сразу в persist()
+                        session.persist(car);
+                        results.add(new CarOperationResult(i, op, CarOperationResult.CREATED, car.getId(), car));
+                    }
+                    case CarOperation.UPDATE -> {
+                        Car existing = session.find(Car.class, operation.getId());
+                        if (existing == null) {
+                            results.add(new CarOperationResult(i, op, CarOperationResult.NOT_FOUND, operation.getId(), null));
+                        } else {
+                            copyFields(operation.getCar(), existing);
+                            results.add(new CarOperationResult(i, op, CarOperationResult.UPDATED, operation.getId(), existing));
+                        }
+                    }
+                    case CarOperation.DELETE -> {
+                        Car existing = session.find(Car.class, operation.getId());
+                        if (existing == null) {
+                            results.add(new CarOperationResult(i, op, CarOperationResult.NOT_FOUND, operation.getId(), null));
+                        } else {
+                            session.remove(existing);
+                            results.add(new CarOperationResult(i, op, CarOperationResult.DELETED, operation.getId(), existing));
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Неизвестная операция: " + op);
+                }
+
+                if ((i + 1) % BATCH_JDBC_SIZE == 0) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+            return results;
+        });
+    }
+
+    // В HQL нет хэш-функций PostgreSQL, поэтому версия коллекции считается
+    // тем же SQL-запросом, что и в CarRepositoryPostgress (longValue() суммы - ее младшие 64 бита)
+    @Override
+    public String getCollectionVersion() {
+        Object[] row = sessionFactory.fromSession(session -> session
+                .createNativeQuery("select count(*), coalesce(sum(hashint8extended(id, version)), 0) from car",
+                        Object[].class)
+                .getSingleResult());
+        return ((Number) row[0]).longValue() + "-" + Long.toHexString(((Number) row[1]).longValue());
+    }
+
+    // Массовая загрузка в обход сущностей: COPY car FROM STDIN через JDBC-соединение сессии (см. CarCopy).
+    // Соединение Hibernate не в режиме автофиксации, поэтому COPY выполняется внутри транзакции сессии
+    @Override
+    public long importCars(InputStream in, BulkFormat format, LongConsumer progress) {
+        return sessionFactory.fromTransaction(session -> session.doReturningWork(connection -> {
+            try {
+                return CarCopy.copyIn(connection, in, format, progress);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+    }
+
+    // Выгрузка одной командой COPY ... TO STDOUT через JDBC-соединение сессии (см. CarCopy).
+    // У сессии одно соединение, поэтому части по id здесь не читаются параллельно
+    @Override
+    public long exportCars(OutputStream out, BulkFormat format, int partitions) {
+        return sessionFactory.fromTransaction(session -> session.doReturningWork(connection -> {
+            try {
+                return CarCopy.copyOut(connection, out, format);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+    }
+
+    // Статистика считается в БД запросами HQL с group by,
+    // перцентили - агрегатной функцией percentile_disc ... within group
+    @Override
+    public CarStats getCarStats() {
+        String aggregates = "count(c), min(c.price), max(c.price), avg(c.price)";
+
+        return sessionFactory.fromSession(session -> {
+            PriceStats total = toPriceStats(session
+                    .createSelectionQuery("select " + aggregates + " from Car c", Object[].class)
+                    .getSingleResult(), 0);
+
+            Map<String, PriceStats> byBrand = new TreeMap<>();
+            for (Object[] row : session.createSelectionQuery(
+                    "select c.brand, " + aggregates + " from Car c where c.brand is not null group by c.brand",
+                    Object[].class).getResultList()) {
+                byBrand.put((String) row[0], toPriceStats(row, 1));
+            }
+
+            Map<Integer, PriceStats> byYear = new TreeMap<>();
+            for (Object[] row : session.createSelectionQuery(
+                    "select c.year, " + aggregates + " from Car c group by c.year",
+                    Object[].class).getResultList()) {
+                byYear.put((Integer) row[0], toPriceStats(row, 1));
+            }
+
+            StringBuilder percentilesHql = new StringBuilder("select ");
+            for (int i = 0; i < PriceAccumulator.PERCENTILES.length; i++) {
+                if (i > 0) percentilesHql.append(", ");
+                percentilesHql.append("percentile_disc(").append(PriceAccumulator.PERCENTILES[i])
+                        .append(") within group (order by c.price)");
+            }
+            Object[] values = session.createSelectionQuery(percentilesHql.append(" from Car c").toString(),
+                    Object[].class).getSingleResult();
+
+            Map<String, BigDecimal> percentiles = new LinkedHashMap<>();
+            for (int i = 0; i < PriceAccumulator.PERCENTILES.length; i++) {
+                percentiles.put(PriceAccumulator.percentileName(PriceAccumulator.PERCENTILES[i]),
+                        (BigDecimal) values[i]);
+            }
+
+            return new CarStats(total, byBrand, byYear, percentiles);
+        });
+    }
 
-        return carToDelete;
+    // Строка результата: count, min, max, avg начиная с позиции from.
+    // avg в HQL возвращается как Double - округляем до копеек
+    private static PriceStats toPriceStats(Object[] row, int from) {
+        Double avg = (Double) row[from + 3];
+        return new PriceStats((Long) row[from], (BigDecimal) row[from + 1], (BigDecimal) row[from + 2],
+                avg == null ? null : BigDecimal.valueOf(avg).setScale(2, RoundingMode.HALF_UP));
     }
 }
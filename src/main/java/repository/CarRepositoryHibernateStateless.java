@@ -0,0 +1,148 @@
+package repository;
+
+import model.Car;
+import model.CarFilter;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static constants.Constants.STREAM_FETCH_SIZE;
+
+// Режим CarRepositoryHibernate для частых коротких операций на StatelessSession.
+// У StatelessSession нет контекста персистентности: загруженные сущности не становятся
+// управляемыми, не хранятся снимки для dirty-checking и нечего очищать при обходе таблицы.
+// Изменения выполняются одним запросом UPDATE/DELETE ... RETURNING вместо find + flush:
+// в HQL нет RETURNING, поэтому это native SQL с результатом в виде Car.
+// Остальные операции (пакеты, статистика, COPY) наследуются из CarRepositoryHibernate
+public class CarRepositoryHibernateStateless extends CarRepositoryHibernate {
+
+    private static final String RETURNING_COLUMNS = " returning id, brand, year, price, version";
+
+    private static final String UPDATE_SQL = "update car set brand = :brand, year = :year, price = :price, "
+            + "version = version + 1 where id = :id" + RETURNING_COLUMNS;
+
+    private static final String UPDATE_IF_VERSION_SQL = "update car set brand = :brand, year = :year, price = :price, "
+            + "version = version + 1 where id = :id and version = :version" + RETURNING_COLUMNS;
+
+    private static final String DELETE_SQL = "delete from car where id = :id" + RETURNING_COLUMNS;
+
+    public CarRepositoryHibernateStateless() {
+        this(HibernateSessionFactory.getDefault());
+    }
+
+    public CarRepositoryHibernateStateless(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    @Override
+    public List<Car> getAll() {
+        return sessionFactory.fromStatelessSession(session -> session
+                .createSelectionQuery("from Car order by id", Car.class)
+                .getResultList());
+    }
+
+    @Override
+    public List<Car> getPage(long afterId, int limit) {
+        return sessionFactory.fromStatelessSession(session -> session
+                .createSelectionQuery("from Car where id > :afterId order by id", Car.class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(limit)
+                .getResultList());
+    }
+
+    @Override
+    public List<Car> find(CarFilter filter) {
+        return sessionFactory.fromStatelessSession(session -> findQuery(session, filter).getResultList());
+    }
+
+    // Курсор PostgreSQL работает только внутри транзакции. Сущности не накапливаются
+    // в сессии, поэтому очищать ее по ходу обхода не нужно
+    @Override
+    public void forEachCar(Consumer<? super Car> action) {
+        sessionFactory.inStatelessTransaction(session -> {
+            try (ScrollableResults<Car> cars = session
+                    .createSelectionQuery("from Car order by id", Car.class)
+                    .setFetchSize(STREAM_FETCH_SIZE)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (cars.next()) {
+                    action.accept(cars.get());
+                }
+            }
+        });
+    }
+
+    // insert() сразу выполняет INSERT (id берется из последовательности, версия - начальная)
+    @Override
+    public Car save(Car car) {
+        if (car == null) {
+            return null;
+        }
+        sessionFactory.inStatelessTransaction(session -> session.insert(car));
+        return car;
+    }
+
+    @Override
+    public Car getById(long id) {
+        return sessionFactory.fromStatelessSession(session -> session.get(Car.class, id));
+    }
+
+    @Override
+    public List<Car> getByIds(Collection<Long> ids) {
+        List<Long> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        if (uniqueIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return withoutNulls(sessionFactory.fromStatelessSession(session -> session.getMultiple(Car.class, uniqueIds)));
+    }
+
+    @Override
+    public Car update(Car car) {
+        return sessionFactory.fromStatelessTransaction(session -> session
+                .createNativeQuery(UPDATE_SQL, Car.class)
+                .setParameter("brand", car.getBrand())
+                .setParameter("year", car.getYear())
+                .setParameter("price", car.getPrice())
+                .setParameter("id", car.getId())
+                .getSingleResultOrNull());
+    }
+
+    // Условие version = :version проверяется в том же UPDATE. Только если ни одна строка
+    // не обновилась, отдельным запросом выясняем, нет автомобиля или у него другая версия
+    @Override
+    public Car update(Car car, long expectedVersion) {
+        return sessionFactory.fromStatelessTransaction(session -> {
+            Car updated = session.createNativeQuery(UPDATE_IF_VERSION_SQL, Car.class)
+                    .setParameter("brand", car.getBrand())
+                    .setParameter("year", car.getYear())
+                    .setParameter("price", car.getPrice())
+                    .setParameter("id", car.getId())
+                    .setParameter("version", expectedVersion)
+                    .getSingleResultOrNull();
+            if (updated != null) {
+                return updated;
+            }
+            Long currentVersion = session
+                    .createSelectionQuery("select version from Car where id = :id", Long.class)
+                    .setParameter("id", car.getId())
+                    .getSingleResultOrNull();
+            if (currentVersion == null) {
+                return null;
+            }
+            throw new VersionConflictException(car.getId(), expectedVersion, currentVersion);
+        });
+    }
+
+    @Override
+    public Car delete(long id) {
+        return sessionFactory.fromStatelessTransaction(session -> session
+                .createNativeQuery(DELETE_SQL, Car.class)
+                .setParameter("id", id)
+                .getSingleResultOrNull());
+    }
+}
@@ -1,17 +1,72 @@
 package repository;
 
 import model.Car;
+import model.CarFilter;
+import model.CarStats;
 
 import java.math.BigDecimal;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
 
+// Потокобезопасное хранилище автомобилей в памяти.
+// Чтение не использует блокировок. Запись одного автомобиля вместе с его индексами
+// выполняется под блокировкой, которая выбирается по id (lock striping),
+// поэтому запись разных автомобилей идет параллельно
 public class CarRepositoryMap implements CarRepository {
-    private Map<Long, Car> storage = new HashMap<>();
-    private long currentId;
+
+    // Количество блокировок для записи (степень двойки)
+    private static final int LOCK_STRIPES = 64;
+
+    // Отсортированная по id карта: страницу можно найти за O(log n) через tailMap
+    private final NavigableMap<Long, Car> storage = new ConcurrentSkipListMap<>();
+    private final AtomicLong currentId = new AtomicLong();
+
+    // Вторичные индексы: значение поля -> множество id автомобилей с этим значением.
+    // Год и цена хранятся в отсортированных картах, чтобы искать по диапазону через subMap
+    private final Map<String, Set<Long>> brandIndex = new ConcurrentHashMap<>();
+    private final NavigableMap<Integer, Set<Long>> yearIndex = new ConcurrentSkipListMap<>();
+    private final NavigableMap<BigDecimal, Set<Long>> priceIndex = new ConcurrentSkipListMap<>();
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // Изменения индексов. Одно значение поля (марка, год, цена) бывает у автомобилей из разных
+    // блокировок id, поэтому добавление id в множество и удаление опустевшего множества
+    // выполняются под общей блокировкой - иначе id мог бы попасть в уже удаленное множество.
+    // Операции короткие (O(log n)), а чтение индексов идет без блокировки
+    private final Object indexLock = new Object();
+
+    // Счетчик изменений и снимок getAll(), построенный при определенном значении счетчика.
+    // Пока данные не менялись, getAll() отдает один и тот же неизменяемый список без копирования
+    private final AtomicLong modCount = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    private record Snapshot(long modCount, List<Car> cars) {
+    }
+
+    // Случайная "эпоха" экземпляра: после перезапуска счетчик изменений начинается заново,
+    // и без эпохи версия коллекции могла бы совпасть с версией до перезапуска
+    private final long epoch = new Random().nextLong();
 
     public CarRepositoryMap() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
         initStorage();
     }
 
@@ -24,65 +79,305 @@ public class CarRepositoryMap implements CarRepository {
     }
 
 
+    // Наружу отдаются только копии: хранимые объекты меняются лишь под блокировкой id
+    // вместе с индексами, и вызывающий код не должен менять их в обход репозитория
+    @Override
+    public List<Car> getAll() {
+        return copiesOf(storedSnapshot());
+    }
+
+    // Неизменяемый список хранимых автомобилей, общий для всех читателей до следующей записи.
+    // Хранимый объект никогда не меняется - update() кладет вместо него новую копию
+    private List<Car> storedSnapshot() {
+        long version = modCount.get();
+        Snapshot current = snapshot;
+        if (current != null && current.modCount() == version) {
+            return current.cars();
+        }
+
+        List<Car> cars = List.copyOf(storage.values());
+        snapshot = new Snapshot(version, cars);
+        return cars;
+    }
+
+    @Override
+    public void forEachCar(Consumer<? super Car> action) {
+        storage.values().forEach(car -> action.accept(copyOf(car)));
+    }
+
     @Override
-    public List<Car > getAll() {
-        return storage.values().stream().toList();
+    public List<Car> getPage(long afterId, int limit) {
+        return storage.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(CarRepositoryMap::copyOf)
+                .toList();
     }
 
     @Override
     public Car save(Car car) {
-        // создаем новый айди
-        car.setId(++currentId);
+        // создаем новый айди атомарно - два потока не получат одинаковый id
+        long id = currentId.incrementAndGet();
+        car.setId(id);
 
-        //
-        storage.put(car.getId(), car);
+        // В хранилище кладем собственную копию, чтобы изменения объекта
+        // вызывающим кодом не рассинхронизировали индексы
+        car.setVersion(0);
+        Car stored = copyOf(car);
+        synchronized (lockFor(id)) {
+            storage.put(id, stored);
+            index(stored);
+            modCount.incrementAndGet();
+        }
         return car;
     }
 
     @Override
     public Car getById(long id) {
-        return storage.getOrDefault(id, null);
-    }
-
-//    @Override
-//    public Car update(Car car) {
-//
-//        // Проверка входных данных
-//        if (car.getId() == null) {
-//            throw new IllegalArgumentException("ID не может быть null");
-//        }
-//
-//        // Проверяем наличие такого id в нашем хранилище
-//        if (!storage.containsKey(car.getId())) {
-//            // Если его там нет, то вместо объекта машины возвращаем null
-//            return null;
-//        }
-//
-//        // Если все проверки пройдены, и такой id есть в нашей базе, то обращаемся
-//        // К этому ключу и кладем новый объект машины
-//        storage.put(car.getId(), car);
-//
-//
-//        return car;
-//    }
+        Car car = storage.get(id);
+        return car == null ? null : copyOf(car);
+    }
+
+    // Прямые обращения к карте по каждому id, без блокировок
+    @Override
+    public List<Car> getByIds(Collection<Long> ids) {
+        List<Car> cars = new ArrayList<>(ids.size());
+        for (Long id : new LinkedHashSet<>(ids)) {
+            Car car = storage.get(id);
+            if (car != null) {
+                cars.add(copyOf(car));
+            }
+        }
+        return cars;
+    }
 
     @Override
     public Car update(Car car) {
         Long id = car.getId();
-        BigDecimal newPrice = car.getPrice();
+        if (id == null) {
+            throw new IllegalArgumentException("ID не может быть null");
+        }
 
-        // Добавить проверки
+        synchronized (lockFor(id)) {
+            Car carToUpdate = storage.get(id);
+            if (carToUpdate == null) return null;
 
-        Car carToUpdate = storage.getOrDefault(id, null);
-        if (carToUpdate == null) return null;
+            return replace(carToUpdate, car);
+        }
+    }
+
+    @Override
+    public Car update(Car car, long expectedVersion) {
+        Long id = car.getId();
+        if (id == null) {
+            throw new IllegalArgumentException("ID не может быть null");
+        }
 
-        carToUpdate.setPrice(newPrice);
-        return carToUpdate;
+        synchronized (lockFor(id)) {
+            Car carToUpdate = storage.get(id);
+            if (carToUpdate == null) return null;
+            if (carToUpdate.getVersion() != expectedVersion) {
+                throw new VersionConflictException(id, expectedVersion, carToUpdate.getVersion());
+            }
+
+            return replace(carToUpdate, car);
+        }
+    }
+
+    // Заменяет хранимый автомобиль новой копией со следующей версией. Вызывается под блокировкой id
+    private Car replace(Car old, Car car) {
+        Car updated = copyOf(car);
+        updated.setVersion(old.getVersion() + 1);
+        storage.put(old.getId(), updated);
+        unindex(old);
+        index(updated);
+        modCount.incrementAndGet();
+        return copyOf(updated);
     }
 
 
     @Override
     public Car delete(long id) {
-        return storage.remove(id);
+        synchronized (lockFor(id)) {
+            Car removed = storage.remove(id);
+            if (removed != null) {
+                unindex(removed);
+                modCount.incrementAndGet();
+            }
+            return removed;
+        }
+    }
+
+    // Версия коллекции - счетчик изменений, поэтому считается за O(1)
+    @Override
+    public String getCollectionVersion() {
+        return Long.toHexString(epoch) + "-" + modCount.get();
+    }
+
+    // ===== Чтение по вторичным индексам (без полного перебора) =====
+
+    // Автомобили заданной марки, по возрастанию id
+    public List<Car> findByBrand(String brand) {
+        Set<Long> ids = brandIndex.get(brand);
+        if (ids == null) {
+            return List.of();
+        }
+        return resolve(List.of(ids), car -> Objects.equals(car.getBrand(), brand));
+    }
+
+    // Автомобили с годом выпуска в диапазоне [fromYear, toYear], по возрастанию id
+    public List<Car> findByYearBetween(int fromYear, int toYear) {
+        if (fromYear > toYear) {
+            return List.of();
+        }
+        return resolve(yearIndex.subMap(fromYear, true, toYear, true).values(),
+                car -> car.getYear() >= fromYear && car.getYear() <= toYear);
+    }
+
+    // Автомобили с ценой в диапазоне [minPrice, maxPrice], по возрастанию id
+    public List<Car> findByPriceBetween(BigDecimal minPrice, BigDecimal maxPrice) {
+        if (minPrice.compareTo(maxPrice) > 0) {
+            return List.of();
+        }
+        return resolve(priceIndex.subMap(minPrice, true, maxPrice, true).values(),
+                car -> car.getPrice() != null
+                        && car.getPrice().compareTo(minPrice) >= 0
+                        && car.getPrice().compareTo(maxPrice) <= 0);
+    }
+
+    // Поиск по фильтру. Кандидаты берутся из одного индекса (марка точнее всего,
+    // затем диапазон года, затем диапазон цены) за O(log n + k),
+    // остальные условия проверяются только у кандидатов
+    @Override
+    public List<Car> find(CarFilter filter) {
+        Collection<Set<Long>> candidates;
+        if (filter.getBrand() != null) {
+            Set<Long> ids = brandIndex.get(filter.getBrand());
+            candidates = ids == null ? List.of() : List.of(ids);
+        } else if (filter.getMinYear() != null || filter.getMaxYear() != null) {
+            candidates = range(yearIndex, filter.getMinYear(), filter.getMaxYear()).values();
+        } else if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+            candidates = range(priceIndex, filter.getMinPrice(), filter.getMaxPrice()).values();
+        } else {
+            candidates = null;
+        }
+
+        List<Car> cars;
+        if (candidates == null) {
+            cars = copiesOf(storage.values());
+        } else {
+            cars = resolve(candidates, filter::matches);
+        }
+
+        cars.sort(filter.comparator());
+        if (filter.getLimit() != null && cars.size() > filter.getLimit()) {
+            cars = new ArrayList<>(cars.subList(0, filter.getLimit()));
+        }
+        return cars;
+    }
+
+    // Статистика считается параллельной сверткой (fork-join) по снимку getAll():
+    // каждый поток ForkJoinPool считает свою часть списка в собственные накопители,
+    // затем накопители объединяются через merge()
+    @Override
+    public CarStats getCarStats() {
+        List<Car> cars = storedSnapshot();
+        Collector<Car, PriceAccumulator, PriceAccumulator> toAccumulator = Collector.of(
+                PriceAccumulator::new, (accumulator, car) -> accumulator.add(car.getPrice()), PriceAccumulator::merge);
+
+        PriceAccumulator total = cars.parallelStream().collect(toAccumulator);
+        Map<String, PriceAccumulator> byBrand = cars.parallelStream()
+                .filter(car -> car.getBrand() != null)
+                .collect(Collectors.groupingBy(Car::getBrand, toAccumulator));
+        Map<Integer, PriceAccumulator> byYear = cars.parallelStream()
+                .collect(Collectors.groupingBy(Car::getYear, toAccumulator));
+
+        BigDecimal[] prices = cars.parallelStream()
+                .map(Car::getPrice)
+                .filter(Objects::nonNull)
+                .toArray(BigDecimal[]::new);
+        Arrays.parallelSort(prices);
+
+        return new CarStats(total.toStats(), PriceAccumulator.toStats(byBrand),
+                PriceAccumulator.toStats(byYear), PriceAccumulator.percentiles(prices));
+    }
+
+    // Часть отсортированного индекса между from и to (включительно). null - без границы
+    private static <K extends Comparable<K>> NavigableMap<K, Set<Long>> range(NavigableMap<K, Set<Long>> index,
+                                                                            K from, K to) {
+        if (from != null && to != null) {
+            return from.compareTo(to) > 0 ? new ConcurrentSkipListMap<>() : index.subMap(from, true, to, true);
+        }
+        if (from != null) {
+            return index.tailMap(from, true);
+        }
+        return index.headMap(to, true);
+    }
+
+    // Превращает найденные по индексу id в автомобили.
+    // Индекс мог измениться параллельной записью, поэтому условие проверяется еще раз
+    // по актуальному состоянию автомобиля в хранилище
+    private List<Car> resolve(Collection<Set<Long>> idSets, Predicate<Car> condition) {
+        List<Car> cars = new ArrayList<>();
+        for (Set<Long> ids : idSets) {
+            for (Long id : ids) {
+                Car car = storage.get(id);
+                if (car != null && condition.test(car)) {
+                    cars.add(copyOf(car));
+                }
+            }
+        }
+        cars.sort(Comparator.comparing(Car::getId));
+        return cars;
+    }
+
+    // ===== Поддержка индексов. Вызывается под блокировкой id автомобиля =====
+
+    private void index(Car car) {
+        synchronized (indexLock) {
+            if (car.getBrand() != null) {
+                brandIndex.computeIfAbsent(car.getBrand(), key -> ConcurrentHashMap.newKeySet()).add(car.getId());
+            }
+            yearIndex.computeIfAbsent(car.getYear(), key -> ConcurrentHashMap.newKeySet()).add(car.getId());
+            if (car.getPrice() != null) {
+                priceIndex.computeIfAbsent(car.getPrice(), key -> ConcurrentHashMap.newKeySet()).add(car.getId());
+            }
+        }
+    }
+
+    // Опустевшие множества удаляются: иначе в индексе оставался бы ключ для каждой
+    // когда-либо сохраненной цены, и поиск по диапазону перебирал бы мертвые ключи
+    private void unindex(Car car) {
+        synchronized (indexLock) {
+            if (car.getBrand() != null) {
+                removeFrom(brandIndex, car.getBrand(), car.getId());
+            }
+            removeFrom(yearIndex, car.getYear(), car.getId());
+            if (car.getPrice() != null) {
+                removeFrom(priceIndex, car.getPrice(), car.getId());
+            }
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Long>> index, K key, Long id) {
+        Set<Long> ids = index.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            index.computeIfPresent(key, (k, set) -> set.isEmpty() ? null : set);
+        }
+    }
+
+    private Object lockFor(long id) {
+        return locks[(int) (id & (LOCK_STRIPES - 1))];
+    }
+
+    private static Car copyOf(Car car) {
+        return new Car(car.getId(), car.getBrand(), car.getYear(), car.getPrice(), car.getVersion());
+    }
+
+    private static List<Car> copiesOf(Collection<Car> cars) {
+        List<Car> copies = new ArrayList<>(cars.size());
+        for (Car car : cars) {
+            copies.add(copyOf(car));
+        }
+        return copies;
     }
 }
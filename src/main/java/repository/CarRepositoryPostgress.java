@@ -4,8 +4,16 @@ package repository;
 // Импорт класса Car из модели
 
 import model.Car;
+import model.CarFilter;
+import model.CarOperation;
+import model.CarOperationResult;
+import model.CarStats;
+import model.PriceStats;
 
 // Импорт классов для работы с большими числами (цена автомобиля)
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 
 // Импорт классов JDBC (Java Database Connectivity) для работы с БД
@@ -13,94 +21,131 @@ import java.sql.*;
 
 // Импорт класса для работы со списками
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-
-// Импорт статических констант из класса Constants
-// Предполагается, что там хранятся настройки подключения к БД
-import static constants.Constants.*;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import static constants.Constants.STREAM_FETCH_SIZE;
+import static constants.Constants.WRITE_BEHIND_BATCH_SIZE;
+import static constants.Constants.WRITE_BEHIND_ENABLED;
+import static constants.Constants.WRITE_BEHIND_INSERT_TIMEOUT_MS;
+import static constants.Constants.WRITE_BEHIND_LINGER_MS;
+import static constants.Constants.WRITE_BEHIND_QUEUE_CAPACITY;
 
 // Класс реализует интерфейс CarRepository для работы с PostgreSQL
-public class CarRepositoryPostgress implements CarRepository {
+public class CarRepositoryPostgress implements CarRepository, AutoCloseable {
 
     // Комментарий о формате URL для подключения к PostgreSQL
     // jdbc:postgresql://localhost:5432/cohort71_cars?user=admin&password=admin123
 
-    // Этот метод предназначен для создания соединения с БД
-    private Connection getConnection() {
-        try {
+    // Пул соединений. Физические соединения открываются пулом один раз
+    // и переиспользуются, поэтому запрос не платит за TCP и авторизацию в БД
+    private final ConnectionPool pool;
+
+    // Запросы изменения возвращают записанную строку (RETURNING) - одно обращение к БД на операцию
+    private static final String RETURNING_COLUMNS = " RETURNING id, brand, year, price, version";
+
+    private static final String INSERT_SQL = "INSERT INTO car (brand, year, price) VALUES (?, ?, ?)"
+            + RETURNING_COLUMNS;
+
+    private static final String UPDATE_SQL = "UPDATE car SET brand = ?, year = ?, price = ?, version = version + 1 "
+            + "WHERE id = ?" + RETURNING_COLUMNS;
+
+    private static final String UPDATE_IF_VERSION_SQL = "UPDATE car SET brand = ?, year = ?, price = ?, "
+            + "version = version + 1 WHERE id = ? AND version = ?" + RETURNING_COLUMNS;
 
-            // При помощи рефлексии загружаем драйвер PostgreSQL в память JVM
-            // В качества аргумента передаем путь к этому драйверу
-            // DB_DRIVER_PATH = "org.postgresql.Driver"
-            Class.forName(DB_DRIVER_PATH);
+    private static final String SELECT_BY_IDS_SQL = "SELECT id, brand, year, price, version FROM car WHERE id = ANY(?)";
 
-            // Формируем строку подключения (URL) к БД
-            // DB_ADDRESS - например "jdbc:postgresql://localhost:5433/"
-            // DB_NAME - например "cohort71_cars"
-            // DB_USER - имя пользователя
-            // DB_PASSWORD - пароль
-            String dbUrl = String.format("%s%s?user=%s&password=%s",
-                    DB_ADDRESS, DB_NAME, DB_USER, DB_PASSWORD);
+    // Колонки, которые applyBatch и GroupCommitWriter получают обратно из INSERT и UPDATE (через getGeneratedKeys)
+    static final String[] STORED_COLUMNS = {"id", "brand", "year", "price", "version"};
 
-            // Создаем и возвращаем соединение с БД
-            // DriverManager управляет всеми соединениями
-            return DriverManager.getConnection(dbUrl);
+    private static final String DELETE_SQL = "DELETE FROM car WHERE id = ?" + RETURNING_COLUMNS;
+
+    // Групповая запись вставок или null, если save() пишет каждый автомобиль сам
+    private final GroupCommitWriter groupCommit;
+
+    // По умолчанию используем общий пул приложения, настроенный из Constants
+    public CarRepositoryPostgress() {
+        this(ConnectionPool.getDefault());
+    }
+
+    public CarRepositoryPostgress(ConnectionPool pool) {
+        this(pool, WRITE_BEHIND_ENABLED ? WRITE_BEHIND_BATCH_SIZE : 0, WRITE_BEHIND_LINGER_MS);
+    }
+
+    // groupCommitSize - сколько вставок объединять в одну транзакцию (0 - не объединять),
+    // groupCommitLingerMs - сколько ждать остальные вставки группы после первой
+    public CarRepositoryPostgress(ConnectionPool pool, int groupCommitSize, long groupCommitLingerMs) {
+        this.pool = pool;
+        this.groupCommit = groupCommitSize > 0
+                ? new GroupCommitWriter(pool, groupCommitSize, groupCommitLingerMs, WRITE_BEHIND_QUEUE_CAPACITY,
+                        WRITE_BEHIND_INSERT_TIMEOUT_MS)
+                : null;
+    }
 
-        } catch (Exception e) {
+    // Останавливает групповую запись, дописав поставленные в очередь автомобили.
+    // Пул соединений не закрывается - им владеет тот, кто его создал
+    @Override
+    public void close() {
+        if (groupCommit != null) {
+            groupCommit.close();
+        }
+    }
+
+    // Этот метод выдает соединение с БД из пула.
+    // close() у полученного соединения (в том числе в try-with-resources)
+    // не разрывает соединение, а возвращает его обратно в пул
+    private Connection getConnection() {
+        try {
+            return pool.getConnection();
+        } catch (SQLException e) {
             // Преобразуем проверяемое исключение в непроверяемое RuntimeException
             // чтобы не объявлять throws в сигнатуре метода
             throw new RuntimeException(e);
         }
     }
 
+    // Статистика пула соединений этого репозитория
+    public ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+
 
     // Метод для сохранения нового автомобиля в БД
     @Override
     public Car save(Car car) {
-        // try-with-resources: автоматически закроет Connection после блока try
-        // Даже если произойдет исключение
-        try (Connection connection = getConnection()) {
-
-            // Формируем SQL-запрос для вставки данных
-            // Используем форматирование строки для безопасности от SQL-инъекций
-            // (но лучше использовать PreparedStatement)
-            String query = String.format(
-                    "INSERT INTO car (brand, year, price) values('%s', %d, %s);",
-                    car.getBrand(),     // Марка автомобиля (строка)
-                    car.getYear(),      // Год выпуска (число)
-                    car.getPrice()      // Цена (BigDecimal преобразуется в строку)
-            );
-
-            // Создаем Statement для выполнения SQL-запросов
-            // Statement - это объект, который отправляет SQL в БД
-            Statement statement = connection.createStatement();
-
-            // Выполняем запрос на вставку
-            // Statement.RETURN_GENERATED_KEYS - указываем, что нужно вернуть
-            // автоматически сгенерированные ключи (в нашем случае id)
-            statement.execute(query, Statement.RETURN_GENERATED_KEYS);
-
-            // Получаем ResultSet с сгенерированными ключами
-            // ResultSet - это таблица с результатами запроса
-            ResultSet resultSet = statement.getGeneratedKeys();
-
-            // Перемещаем курсор на первую строку результата
-            // next() возвращает true если строка существует
-            resultSet.next();
+        if (groupCommit != null) {
+            // Вставка уходит в общую группу; ждем ее фиксации и получаем записанную строку
+            return groupCommit.insert(car);
+        }
 
-            // Получаем значение сгенерированного id из колонки "id"
-            Long id = resultSet.getLong("id");
+        // Параметризованный запрос: текст один и тот же для любых значений, поэтому драйвер
+        // готовит его на сервере один раз на соединение (prepareThreshold в настройках пула),
+        // а значения не нужно экранировать - SQL-инъекция невозможна.
+        // RETURNING возвращает то, что записала БД (id, версию, округленную цену), в том же запросе
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(INSERT_SQL)
+        ) {
+            ps.setString(1, car.getBrand());
+            ps.setInt(2, car.getYear());
+            ps.setBigDecimal(3, car.getPrice());
 
-            // Устанавливаем id в объект Car
-            car.setId(id);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return mapCar(rs);
+            }
 
-        } catch (Exception e) {
+        } catch (SQLException e) {
             // Обрабатываем исключения БД
             throw new RuntimeException(e);
         }
-
-        // Возвращаем автомобиль с установленным id
-        return car;
     }
 
 
@@ -175,104 +220,137 @@ public class CarRepositoryPostgress implements CarRepository {
     }
 
 
-    // Метод для обновления автомобиля
+    // Метод для поиска нескольких автомобилей одним запросом.
+    // id передаются одним параметром-массивом (= ANY(?)), поэтому текст запроса не зависит
+    // от количества id и подготавливается на сервере один раз, как и остальные запросы
     @Override
-    public Car update(Car car) {
-
-        // Делаем строку-шаблон для запроса в базу данных с целью обновления
-        // строки с автомобилем, который передается на вход
-        String sqlQuery = "UPDATE car SET brand=?, year=?, price=? WHERE id=?";
-        // String sqlQuery = "UPDATE car SET price=? WHERE id=?";
+    public List<Car> getByIds(Collection<Long> ids) {
+        Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+        if (uniqueIds.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-        // Создаем поток подключения к базе данных
+        Map<Long, Car> found = new HashMap<>();
         try (Connection connection = getConnection();
-             // передаем шаблон строки для обновления
-             PreparedStatement ps = connection.prepareStatement(sqlQuery)
+             PreparedStatement ps = connection.prepareStatement(SELECT_BY_IDS_SQL)
         ) {
+            ps.setArray(1, connection.createArrayOf("bigint", uniqueIds.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Car car = mapCar(rs);
+                    found.put(car.getId(), car);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось прочитать автомобили по id", e);
+        }
 
+        // БД возвращает строки в произвольном порядке - восстанавливаем порядок запроса
+        List<Car> cars = new ArrayList<>(found.size());
+        for (Long id : uniqueIds) {
+            Car car = found.get(id);
+            if (car != null) {
+                cars.add(car);
+            }
+        }
+        return cars;
+    }
+
+
+    // Метод для обновления автомобиля.
+    // Каждое обновление увеличивает версию записи на 1.
+    // RETURNING возвращает сохраненную строку в том же запросе - повторно читать автомобиль не нужно
+    @Override
+    public Car update(Car car) {
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(UPDATE_SQL)
+        ) {
             // корректируем шаблон строки подменяя знаки вопроса на информацию об
             // автомобиле
-             ps.setString(1, car.getBrand());
-             ps.setInt(2, car.getYear());
-             ps.setBigDecimal(3, car.getPrice());
-             ps.setLong(4, car.getId());
-
-            // Метод executeUpdate() предназначен для обновления данных в базе данных
-            // Он дает нам обратную связь в виде значения int сообщая количество
-            // измененных в результате его работы строк. Эту информацию можно
-            // использовать для дальнейших проверок. Если например количество
-            // измененных строк равно нулю, то можно сообщить об этом пробросив
-            // соотвествующее исключение
-            int rowsUpdated = ps.executeUpdate();
-            if (rowsUpdated == 0) {
-                throw new RuntimeException("Не удалось обновить автомобиль с id " + car.getId());
-            }
+            ps.setString(1, car.getBrand());
+            ps.setInt(2, car.getYear());
+            ps.setBigDecimal(3, car.getPrice());
+            ps.setLong(4, car.getId());
 
-            // Если все прошло успешно, и программа добралась до этого момента
-            // то возвращаем тот-же объект который получили на входе
-            // Хотя наверное можно было бы прочитать его из базы данных и вернуть
-            // Но не хочется лишний раз дергать базу данных
-            return car;
+            // Запрос с RETURNING возвращает строки, поэтому выполняем его через executeQuery().
+            // Пустой результат - автомобиля с таким id нет
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new RuntimeException("Не удалось обновить автомобиль с id " + car.getId());
+                }
+                return mapCar(rs);
+            }
 
-        } catch (Exception e) {
+        } catch (SQLException e) {
             // Преобразуем проверяемое исключение в непроверяемое RuntimeException
             // чтобы не объявлять throws в сигнатуре метода
             throw new RuntimeException(e);
         }
-
     }
 
-    // Метод для удаления автомобиля по id
+    // Метод для условного обновления. Условие version = ? проверяется самой БД
+    // в том же UPDATE, поэтому между проверкой и записью никто не может вклиниться
     @Override
-    public Car delete(long id) {
+    public Car update(Car car, long expectedVersion) {
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(UPDATE_IF_VERSION_SQL)
+        ) {
+            ps.setString(1, car.getBrand());
+            ps.setInt(2, car.getYear());
+            ps.setBigDecimal(3, car.getPrice());
+            ps.setLong(4, car.getId());
+            ps.setLong(5, expectedVersion);
 
-        // получаем по id автомобиль который нужно удалить. Для этого используем
-        // ранее создынный метод getById(id)
-        Car carToRemove = getById(id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return mapCar(rs);
+                }
+            }
 
-        // Если такого автомобиля не существует, то сразу выходим из этого
-        // метода пробрасываем исключение
-        if (carToRemove == null) {
-            throw new IllegalArgumentException("Автомобиль с id " + id + " не найден");
-            // return null;
-        }
+            // Ни одна строка не обновилась: либо автомобиля нет, либо у него другая версия
+            try (PreparedStatement check = connection.prepareStatement("SELECT version FROM car WHERE id = ?")) {
+                check.setLong(1, car.getId());
+                try (ResultSet rs = check.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    throw new VersionConflictException(car.getId(), expectedVersion, rs.getLong("version"));
+                }
+            }
 
-        // Если id существует то формируем строку-запрос в базу данных для удаления
-        String sqlQuery = "delete from car where id = ?";
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось обновить автомобиль с id " + car.getId(), e);
+        }
+    }
 
-        // Соединяемся с базой данных
+    // Метод для удаления автомобиля по id.
+    // DELETE ... RETURNING удаляет строку и возвращает ее одним запросом: не нужно сначала
+    // читать автомобиль (отдельное соединение и еще один запрос), и между чтением и удалением
+    // никто не может изменить строку
+    @Override
+    public Car delete(long id) {
+        Car removed;
         try (Connection connection = getConnection();
-             // передаем нашу строку-запрос на удаление
-             PreparedStatement ps = connection.prepareStatement(sqlQuery)
+             PreparedStatement ps = connection.prepareStatement(DELETE_SQL)
         ) {
-
-            // Этот метод предназначен для того чтобы подменить знак вопроса
-            // на значение id который в свою очередь имеет тип Long
-            // единичка означает что эта строка "delete from car where id = ?"
-            // будет проверятся посимвольно и
-            // первое совпадение со знаком вопроса будет подменено на id
+            // Подменяем знак вопроса на id
             ps.setLong(1, id);
 
-            // Метод executeUpdate() предназначен для обновления данных в базе данных
-            // Он дает нам обратную связь в виде значения int сообщая количество
-            // измененных в результате его работы строк. Эту информацию можно
-            // использовать для дальнейших проверок. Если например количество
-            // измененных строк равно нулю, то можно сообщить об этом пробросив
-            // соотвествующее исключение
-            int rowsDeleted = ps.executeUpdate();
-            if (rowsDeleted == 0) {
-                throw new RuntimeException("Не удалось удалить автомобиль с id " + id);
+            try (ResultSet rs = ps.executeQuery()) {
+                removed = rs.next() ? mapCar(rs) : null;
             }
 
-            // если все-таки изменения в базе данных произошли, то можно вернуть
-            // удаленный автомобиль
-            return carToRemove;
-
-        } catch (Exception e) {
+        } catch (SQLException e) {
             // Преобразуем проверяемое исключение в непроверяемое RuntimeException
             // чтобы не объявлять throws в сигнатуре метода
-            throw new RuntimeException("Не удалось удалить автомобиль с id " + id);
+            throw new RuntimeException("Не удалось удалить автомобиль с id " + id, e);
+        }
+
+        // Если такого автомобиля не существует, пробрасываем исключение
+        if (removed == null) {
+            throw new IllegalArgumentException("Автомобиль с id " + id + " не найден");
         }
+        return removed;
     }
 
     // Метод для получения всех автомобилей (пока не реализован)
@@ -282,7 +360,7 @@ public class CarRepositoryPostgress implements CarRepository {
         List<Car> cars = new ArrayList<>();
 
         // Создаем строку запроса для выборки из базы данных
-        String sqlquery = "SELECT id, brand, year, price FROM car ORDER BY id";
+        String sqlquery = "SELECT id, brand, year, price, version FROM car ORDER BY id";
 
         // Открываем поток для чтения
         try (Connection connection = getConnection();
@@ -307,8 +385,356 @@ public class CarRepositoryPostgress implements CarRepository {
     }
 
 
-    // Приватный вспомогательный метод для преобразования ResultSet в Car
-    private Car mapCar(ResultSet rs) throws SQLException {
+    // Метод для постраничного чтения.
+    // Условие id > ? вместе с ORDER BY id использует индекс первичного ключа,
+    // поэтому БД сразу переходит к нужному месту, а не пропускает строки как при OFFSET
+    @Override
+    public List<Car> getPage(long afterId, int limit) {
+        List<Car> cars = new ArrayList<>();
+        String sqlQuery = "SELECT id, brand, year, price, version FROM car WHERE id > ? ORDER BY id LIMIT ?";
+
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sqlQuery)) {
+            ps.setLong(1, afterId);
+            ps.setInt(2, limit);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    cars.add(mapCar(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось прочитать страницу автомобилей после id " + afterId, e);
+        }
+
+        return cars;
+    }
+
+    // Метод для поиска автомобилей по фильтру.
+    // Условия добавляются в запрос только если заданы, значения передаются параметрами (?),
+    // поэтому запрос защищен от SQL-инъекций, а БД может использовать индексы
+    // car(brand), car(year), car(price) (см. db/002_car_filter_indexes.sql).
+    // Поле сортировки подставляется в текст запроса только из белого списка CarFilter.SORT_FIELDS
+    @Override
+    public List<Car> find(CarFilter filter) {
+        StringBuilder sqlQuery = new StringBuilder("SELECT id, brand, year, price, version FROM car WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+
+        if (filter.getBrand() != null) {
+            sqlQuery.append(" AND brand = ?");
+            params.add(filter.getBrand());
+        }
+        if (filter.getMinYear() != null) {
+            sqlQuery.append(" AND year >= ?");
+            params.add(filter.getMinYear());
+        }
+        if (filter.getMaxYear() != null) {
+            sqlQuery.append(" AND year <= ?");
+            params.add(filter.getMaxYear());
+        }
+        if (filter.getMinPrice() != null) {
+            sqlQuery.append(" AND price >= ?");
+            params.add(filter.getMinPrice());
+        }
+        if (filter.getMaxPrice() != null) {
+            sqlQuery.append(" AND price <= ?");
+            params.add(filter.getMaxPrice());
+        }
+
+        sqlQuery.append(" ORDER BY ").append(sortColumn(filter));
+        if (filter.isDescending()) {
+            sqlQuery.append(" DESC");
+        }
+        sqlQuery.append(", id");
+
+        if (filter.getLimit() != null) {
+            sqlQuery.append(" LIMIT ?");
+            params.add(filter.getLimit());
+        }
+
+        List<Car> cars = new ArrayList<>();
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sqlQuery.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    cars.add(mapCar(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось выполнить поиск автомобилей", e);
+        }
+
+        return cars;
+    }
+
+    // Имя колонки для ORDER BY. Никогда не берем его напрямую из запроса клиента
+    private static String sortColumn(CarFilter filter) {
+        return switch (filter.getSortBy()) {
+            case "brand" -> "brand";
+            case "year" -> "year";
+            case "price" -> "price";
+            default -> "id";
+        };
+    }
+
+    // Метод для потокового чтения всех автомобилей.
+    // PostgreSQL отдает строки порциями по STREAM_FETCH_SIZE только внутри транзакции
+    // (autoCommit = false), иначе драйвер загружает весь результат в память сразу
+    @Override
+    public void forEachCar(Consumer<? super Car> action) {
+        String sqlQuery = "SELECT id, brand, year, price, version FROM car ORDER BY id";
+
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement ps = connection.prepareStatement(sqlQuery)) {
+                // Размер порции, которую драйвер забирает из курсора за один запрос к БД
+                ps.setFetchSize(STREAM_FETCH_SIZE);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        action.accept(mapCar(rs));
+                    }
+                }
+            }
+
+            // Транзакция только читала данные, фиксировать нечего
+            connection.rollback();
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось прочитать автомобили из базы данных ", e);
+        }
+    }
+
+
+    // Метод для пакетного применения операций в одной транзакции.
+    // Подряд идущие операции одного типа копятся в PreparedStatement через addBatch()
+    // и отправляются в БД одним executeBatch(). Когда тип операции меняется, накопленный
+    // пакет отправляется, поэтому порядок операций сохраняется
+    @Override
+    public List<CarOperationResult> applyBatch(List<CarOperation> operations) {
+        CarOperationResult[] results = new CarOperationResult[operations.size()];
+
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+
+            // Драйвер добавляет к INSERT и UPDATE "RETURNING <колонки>" и отдает строки через
+            // getGeneratedKeys() - в результатах то, что записала БД (версия, округленная цена)
+            try (PreparedStatement insert = connection.prepareStatement(
+                         "INSERT INTO car (brand, year, price) VALUES (?, ?, ?)", STORED_COLUMNS);
+                 PreparedStatement update = connection.prepareStatement(
+                         "UPDATE car SET brand=?, year=?, price=?, version = version + 1 WHERE id=?", STORED_COLUMNS);
+                 PreparedStatement delete = connection.prepareStatement(
+                         "DELETE FROM car WHERE id = ?")
+            ) {
+                // Начало текущей серии операций одного типа
+                int runStart = 0;
+
+                for (int i = 0; i < operations.size(); i++) {
+                    CarOperation operation = operations.get(i);
+                    if (i > runStart && !operation.getOp().equals(operations.get(runStart).getOp())) {
+                        executeRun(operations, runStart, i, insert, update, delete, results);
+                        runStart = i;
+                    }
+
+                    Car car = operation.getCar();
+                    switch (operation.getOp()) {
+                        case CarOperation.CREATE -> {
+                            insert.setString(1, car.getBrand());
+                            insert.setInt(2, car.getYear());
+                            insert.setBigDecimal(3, car.getPrice());
+                            insert.addBatch();
+                        }
+                        case CarOperation.UPDATE -> {
+                            update.setString(1, car.getBrand());
+                            update.setInt(2, car.getYear());
+                            update.setBigDecimal(3, car.getPrice());
+                            update.setLong(4, operation.getId());
+                            update.addBatch();
+                        }
+                        case CarOperation.DELETE -> {
+                            delete.setLong(1, operation.getId());
+                            delete.addBatch();
+                        }
+                        default -> throw new IllegalArgumentException("Неизвестная операция: " + operation.getOp());
+                    }
+                }
+                if (!operations.isEmpty()) {
+                    executeRun(operations, runStart, operations.size(), insert, update, delete, results);
+                }
+
+                connection.commit();
+
+            } catch (SQLException | RuntimeException e) {
+                // Откатываем весь пакет целиком
+                connection.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось выполнить пакет операций, изменения отменены", e);
+        }
+
+        return List.of(results);
+    }
+
+    // Отправляет в БД накопленную серию операций одного типа [from, to)
+    // и заполняет результаты для каждой операции серии
+    private void executeRun(List<CarOperation> operations, int from, int to,
+                            PreparedStatement insert, PreparedStatement update, PreparedStatement delete,
+                            CarOperationResult[] results) throws SQLException {
+        String op = operations.get(from).getOp();
+
+        if (CarOperation.CREATE.equals(op)) {
+            insert.executeBatch();
+            // Вставленные строки приходят в том же порядке, что и строки пакета
+            try (ResultSet stored = insert.getGeneratedKeys()) {
+                for (int i = from; i < to; i++) {
+                    stored.next();
+                    Car car = mapCar(stored);
+                    results[i] = new CarOperationResult(i, op, CarOperationResult.CREATED, car.getId(), car);
+                }
+            }
+            return;
+        }
+
+        boolean isUpdate = CarOperation.UPDATE.equals(op);
+        int[] counts = (isUpdate ? update : delete).executeBatch();
+        // Обновленные строки идут по порядку пакета; у ненайденных id строки нет
+        try (ResultSet stored = isUpdate ? update.getGeneratedKeys() : null) {
+            for (int i = from; i < to; i++) {
+                CarOperation operation = operations.get(i);
+                if (counts[i - from] == 0) {
+                    results[i] = new CarOperationResult(i, op, CarOperationResult.NOT_FOUND, operation.getId(), null);
+                } else if (isUpdate) {
+                    stored.next();
+                    results[i] = new CarOperationResult(i, op, CarOperationResult.UPDATED, operation.getId(), mapCar(stored));
+                } else {
+                    results[i] = new CarOperationResult(i, op, CarOperationResult.DELETED, operation.getId(), null);
+                }
+            }
+        }
+    }
+
+
+    // Метод для массовой загрузки через COPY car FROM STDIN (см. CarCopy).
+    // Соединение в режиме автофиксации: вся загрузка - одна команда COPY и одна транзакция
+    @Override
+    public long importCars(InputStream in, BulkFormat format, LongConsumer progress) {
+        try (Connection connection = getConnection()) {
+            return CarCopy.copyIn(connection, in, format, progress);
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    // Метод для выгрузки через COPY ... TO STDOUT (см. CarCopy).
+    // При partitions > 1 диапазон id читается параллельно несколькими соединениями пула
+    @Override
+    public long exportCars(OutputStream out, BulkFormat format, int partitions) {
+        try {
+            if (partitions > 1) {
+                return CarCopy.copyOutParallel(pool, out, format, partitions);
+            }
+            try (Connection connection = getConnection()) {
+                return CarCopy.copyOut(connection, out, format);
+            }
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    // Метод для получения статистики цен. Всё считается в PostgreSQL:
+    // GROUPING SETS за один проход по таблице дает группы по марке, по году и общий итог,
+    // а percentile_disc - перцентили. В приложение приходит несколько сотен байт
+    @Override
+    public CarStats getCarStats() {
+        String groupsQuery = "SELECT brand, year, GROUPING(brand) AS g_brand, GROUPING(year) AS g_year, " +
+                "count(*) AS cnt, min(price) AS min_price, max(price) AS max_price, " +
+                "round(avg(price), 2) AS avg_price " +
+                "FROM car GROUP BY GROUPING SETS ((brand), (year), ())";
+        String percentilesQuery = "SELECT percentile_disc(?::float8[]) WITHIN GROUP (ORDER BY price) FROM car";
+
+        PriceStats total = new PriceStats(0, null, null, null);
+        Map<String, PriceStats> byBrand = new TreeMap<>();
+        Map<Integer, PriceStats> byYear = new TreeMap<>();
+        Map<String, BigDecimal> percentiles = new LinkedHashMap<>();
+
+        try (Connection connection = getConnection()) {
+
+            try (PreparedStatement ps = connection.prepareStatement(groupsQuery);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    PriceStats stats = new PriceStats(rs.getLong("cnt"), rs.getBigDecimal("min_price"),
+                            rs.getBigDecimal("max_price"), rs.getBigDecimal("avg_price"));
+                    boolean brandGroup = rs.getInt("g_brand") == 0;
+                    boolean yearGroup = rs.getInt("g_year") == 0;
+
+                    if (brandGroup && rs.getString("brand") != null) {
+                        byBrand.put(rs.getString("brand"), stats);
+                    } else if (yearGroup) {
+                        byYear.put(rs.getInt("year"), stats);
+                    } else if (!brandGroup) {
+                        total = stats;
+                    }
+                }
+            }
+
+            try (PreparedStatement ps = connection.prepareStatement(percentilesQuery)) {
+                Double[] fractions = new Double[PriceAccumulator.PERCENTILES.length];
+                for (int i = 0; i < fractions.length; i++) {
+                    fractions[i] = PriceAccumulator.PERCENTILES[i];
+                }
+                ps.setArray(1, connection.createArrayOf("float8", fractions));
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    Array values = rs.getArray(1);
+                    BigDecimal[] prices = values == null ? null : (BigDecimal[]) values.getArray();
+                    for (int i = 0; i < fractions.length; i++) {
+                        percentiles.put(PriceAccumulator.percentileName(fractions[i]),
+                                prices == null ? null : prices[i]);
+                    }
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось посчитать статистику по автомобилям", e);
+        }
+
+        return new CarStats(total, byBrand, byYear, percentiles);
+    }
+
+
+    // Версия коллекции считается в БД за один проход без передачи строк в приложение:
+    // количество строк и сумма 64-битных хэшей пар (id, version) - хэш id с version в качестве соли.
+    // sum от bigint дает numeric; младшие 64 бита суммы - сложение по модулю 2^64, как в CarRepository
+    @Override
+    public String getCollectionVersion() {
+        String sqlQuery = "SELECT count(*), coalesce(sum(hashint8extended(id, version)), 0) FROM car";
+
+        try (Connection connection = getConnection();
+             PreparedStatement ps = connection.prepareStatement(sqlQuery);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getLong(1) + "-" + Long.toHexString(rs.getBigDecimal(2).longValue());
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось получить версию списка автомобилей", e);
+        }
+    }
+
+
+    // Вспомогательный метод для преобразования ResultSet в Car (им пользуется и GroupCommitWriter)
+    static Car mapCar(ResultSet rs) throws SQLException {
         // Извлекаем значение колонки "id" как Long
         // getLong() возвращает примитив long, но может быть NULL в БД
         // rs.wasNull() можно использовать для проверки NULL
@@ -324,7 +750,10 @@ public class CarRepositoryPostgress implements CarRepository {
         // BigDecimal идеально подходит для денежных значений
         BigDecimal price = rs.getBigDecimal("price");
 
+        // Извлекаем версию записи
+        long version = rs.getLong("version");
+
         // Создаем и возвращаем новый объект Car
-        return new Car(dbId, brand, year, price);
+        return new Car(dbId, brand, year, price, version);
     }
 }
\ No newline at end of file
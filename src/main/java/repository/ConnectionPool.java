@@ -0,0 +1,370 @@
+// Объявление пакета, в котором находится класс
+package repository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static constants.Constants.*;
+
+// Ограниченный пул соединений с базой данных.
+// Физическое соединение (TCP + авторизация в PostgreSQL) открывается один раз
+// и потом многократно переиспользуется. Клиент получает "обертку" над соединением:
+// вызов close() у обертки не закрывает физическое соединение, а возвращает его в пул.
+public class ConnectionPool implements AutoCloseable {
+
+    // Общий пул приложения, настроенный из Constants.
+    // Создается лениво при первом обращении (идиома holder-класса)
+    private static class DefaultHolder {
+        private static final ConnectionPool INSTANCE = new ConnectionPool(
+                DB_ADDRESS + DB_NAME + "?prepareThreshold=" + DB_PREPARE_THRESHOLD, DB_USER, DB_PASSWORD,
+                POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_ACQUIRE_TIMEOUT_MS,
+                POOL_IDLE_TIMEOUT_MS, POOL_VALIDATION_INTERVAL_MS);
+    }
+
+    // Признак того, что общий пул уже был создан (чтобы не создавать его при закрытии)
+    private static volatile boolean defaultCreated;
+
+    public static ConnectionPool getDefault() {
+        defaultCreated = true;
+        return DefaultHolder.INSTANCE;
+    }
+
+    // Закрывает общий пул, если он создавался. Вызывается при остановке приложения
+    public static void closeDefault() {
+        if (defaultCreated) {
+            DefaultHolder.INSTANCE.close();
+        }
+    }
+
+    // Параметры подключения
+    private final String url;
+    private final Properties connectionProperties = new Properties();
+
+    // Настройки пула
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long validationIntervalMs;
+
+    // Свободные соединения. Берем с головы (самое "теплое"), вытесняем с хвоста (самое старое)
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    // Ограничивает количество одновременно выданных соединений значением maxSize
+    private final Semaphore permits;
+
+    // Фоновый поток, который закрывает простаивающие соединения и поддерживает minSize
+    private final ScheduledExecutorService evictor;
+
+    // Статистика пула
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password,
+                          int minSize, int maxSize, long acquireTimeoutMs,
+                          long idleTimeoutMs, long validationIntervalMs) {
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Некорректный размер пула: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        if (user != null) {
+            connectionProperties.setProperty("user", user);
+        }
+        if (password != null) {
+            connectionProperties.setProperty("password", password);
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.validationIntervalMs = validationIntervalMs;
+        this.permits = new Semaphore(maxSize, true);
+
+        // Драйвер загружаем один раз при создании пула, а не на каждое соединение
+        try {
+            Class.forName(DB_DRIVER_PATH);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMs / 2);
+        evictor.scheduleWithFixedDelay(this::evictAndFill, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Выдает соединение из пула. Если все maxSize соединений заняты,
+    // ждет не дольше acquireTimeoutMs и затем бросает SQLException
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Пул соединений закрыт");
+        }
+
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLException("Не удалось получить соединение из пула за " + acquireTimeoutMs + " мс");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения было прервано", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = createPhysical();
+            }
+            acquired.increment();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Берет проверенное свободное соединение или возвращает null, если свободных нет
+    private PooledConnection takeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (isUsable(pooled)) {
+                return pooled;
+            }
+            validationFailures.increment();
+            destroy(pooled);
+        }
+        return null;
+    }
+
+    // Соединение, которое недавно использовалось, считаем рабочим без лишнего запроса к БД
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < validationIntervalMs) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(POOL_VALIDATION_TIMEOUT_SEC);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection createPhysical() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, connectionProperties);
+        PooledConnection pooled;
+        try {
+            pooled = new PooledConnection(physical);
+        } catch (SQLException e) {
+            physical.close();
+            throw e;
+        }
+        total.incrementAndGet();
+        created.increment();
+        return pooled;
+    }
+
+    // Возвращает соединение в пул после close() у обертки
+    private void release(PooledConnection pooled) {
+        try {
+            if (closed || pooled.physical.isClosed()) {
+                destroy(pooled);
+                return;
+            }
+            // Возвращаем соединение в исходное состояние для следующего клиента:
+            // сначала откатываем незавершенную транзакцию (SET TRANSACTION действует только в ней),
+            // затем восстанавливаем настройки сессии, которые клиент менял через JDBC
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            if (pooled.readOnlyChanged) {
+                pooled.physical.setReadOnly(pooled.defaultReadOnly);
+                pooled.readOnlyChanged = false;
+            }
+            if (pooled.isolationChanged) {
+                pooled.physical.setTransactionIsolation(pooled.defaultIsolation);
+                pooled.isolationChanged = false;
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        total.decrementAndGet();
+        destroyed.increment();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ignored) {
+            // Соединение уже неработоспособно, закрываем "как получится"
+        }
+    }
+
+    // Закрывает соединения, простаивающие дольше idleTimeoutMs, но оставляет не меньше minSize.
+    // Затем открывает недостающие соединения до minSize
+    private void evictAndFill() {
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext() && total.get() > minSize) {
+            PooledConnection pooled = oldestFirst.next();
+            if (now - pooled.lastUsed > idleTimeoutMs && idle.removeLastOccurrence(pooled)) {
+                destroy(pooled);
+            }
+        }
+
+        while (total.get() < minSize && permits.tryAcquire()) {
+            try {
+                PooledConnection pooled = createPhysical();
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                // БД недоступна - попробуем при следующем запуске
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    // Снимок статистики пула в текущий момент
+    public Stats getStats() {
+        int idleCount = idle.size();
+        int totalCount = total.get();
+        return new Stats(totalCount, idleCount, Math.max(0, totalCount - idleCount), waiting.get(),
+                acquired.sum(), created.sum(), destroyed.sum(), timeouts.sum(), validationFailures.sum());
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    // Статистика пула: сколько соединений открыто, свободно, занято,
+    // сколько потоков ждут соединение и счетчики событий с момента запуска
+    public record Stats(int total, int idle, int active, int waiting,
+                        long acquired, long created, long destroyed,
+                        long timeouts, long validationFailures) {
+    }
+
+    // Физическое соединение вместе с временем последнего использования
+    // и исходными настройками сессии, которые восстанавливаются при возврате в пул
+    private final class PooledConnection {
+        private final Connection physical;
+        private volatile long lastUsed;
+
+        private final boolean defaultReadOnly;
+        private final int defaultIsolation;
+        // Клиент менял настройку - при возврате ее нужно восстановить.
+        // Меняются только владельцем соединения, пока оно выдано
+        private boolean readOnlyChanged;
+        private boolean isolationChanged;
+
+        private PooledConnection(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.lastUsed = System.currentTimeMillis();
+            this.defaultReadOnly = physical.isReadOnly();
+            this.defaultIsolation = physical.getTransactionIsolation();
+        }
+
+        // Создает обертку, которую получит клиент. Каждая выдача - новая обертка,
+        // поэтому повторный close() у старой обертки не затронет следующего клиента
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new LeaseHandler(this));
+        }
+    }
+
+    // Перехватывает вызовы к соединению: close() возвращает соединение в пул,
+    // остальные методы передаются физическому соединению
+    private final class LeaseHandler implements InvocationHandler {
+        private PooledConnection pooled;
+
+        private LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (pooled != null) {
+                        PooledConnection toRelease = pooled;
+                        pooled = null;
+                        release(toRelease);
+                    }
+                    return null;
+                case "isClosed":
+                    return pooled == null || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + (pooled == null ? "closed" : pooled.physical) + "]";
+                default:
+                    if (pooled == null) {
+                        throw new SQLException("Соединение уже возвращено в пул");
+                    }
+                    if (method.getName().equals("setReadOnly")) {
+                        pooled.readOnlyChanged = true;
+                    } else if (method.getName().equals("setTransactionIsolation")) {
+                        pooled.isolationChanged = true;
+                    }
+                    try {
+                        return method.invoke(pooled.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
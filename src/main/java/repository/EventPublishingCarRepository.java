@@ -0,0 +1,140 @@
+package repository;
+
+import events.CarEventLog;
+import model.Car;
+import model.CarEvent;
+import model.CarFilter;
+import model.CarOperation;
+import model.CarOperationResult;
+import model.CarStats;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+// Обертка над любым CarRepository (паттерн "декоратор"), которая после каждого успешного
+// изменения записывает событие в ленту CarEventLog: created, updated или deleted.
+// Операция, завершившаяся исключением или ничего не нашедшая (null), события не порождает.
+// Массовая загрузка порождает одно событие reset вместо события на каждый автомобиль
+public class EventPublishingCarRepository implements CarRepository {
+
+    private final CarRepository delegate;
+    private final CarEventLog events;
+
+    public EventPublishingCarRepository(CarRepository delegate, CarEventLog events) {
+        this.delegate = delegate;
+        this.events = events;
+    }
+
+    @Override
+    public List<Car> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public void forEachCar(Consumer<? super Car> action) {
+        delegate.forEachCar(action);
+    }
+
+    @Override
+    public List<Car> getPage(long afterId, int limit) {
+        return delegate.getPage(afterId, limit);
+    }
+
+    @Override
+    public List<Car> find(CarFilter filter) {
+        return delegate.find(filter);
+    }
+
+    @Override
+    public Car getById(long id) {
+        return delegate.getById(id);
+    }
+
+    @Override
+    public List<Car> getByIds(Collection<Long> ids) {
+        return delegate.getByIds(ids);
+    }
+
+    @Override
+    public Car save(Car car) {
+        Car saved = delegate.save(car);
+        if (saved != null) {
+            events.publish(CarEvent.CREATED, saved.getId(), saved);
+        }
+        return saved;
+    }
+
+    @Override
+    public Car update(Car car) {
+        Car updated = delegate.update(car);
+        if (updated != null) {
+            events.publish(CarEvent.UPDATED, updated.getId(), updated);
+        }
+        return updated;
+    }
+
+    @Override
+    public Car update(Car car, long expectedVersion) {
+        Car updated = delegate.update(car, expectedVersion);
+        if (updated != null) {
+            events.publish(CarEvent.UPDATED, updated.getId(), updated);
+        }
+        return updated;
+    }
+
+    @Override
+    public Car delete(long id) {
+        Car deleted = delegate.delete(id);
+        if (deleted != null) {
+            events.publish(CarEvent.DELETED, id, deleted);
+        }
+        return deleted;
+    }
+
+    // Пакет применяется целиком или не применяется вовсе, поэтому события пишутся
+    // после успешного пакета, в порядке операций
+    @Override
+    public List<CarOperationResult> applyBatch(List<CarOperation> operations) {
+        List<CarOperationResult> results = delegate.applyBatch(operations);
+        for (CarOperationResult result : results) {
+            switch (result.getStatus()) {
+                case CarOperationResult.CREATED -> events.publish(CarEvent.CREATED, result.getId(), result.getCar());
+                case CarOperationResult.UPDATED -> events.publish(CarEvent.UPDATED, result.getId(), result.getCar());
+                case CarOperationResult.DELETED -> events.publish(CarEvent.DELETED, result.getId(), result.getCar());
+                default -> {
+                    // not_found - ничего не изменилось
+                }
+            }
+        }
+        return results;
+    }
+
+    // Даже неудачная загрузка по умолчанию могла сохранить часть пакетов
+    @Override
+    public long importCars(InputStream in, BulkFormat format, LongConsumer progress) {
+        try {
+            return delegate.importCars(in, format, progress);
+        } finally {
+            events.publish(CarEvent.RESET, null, null);
+        }
+    }
+
+    @Override
+    public long exportCars(OutputStream out, BulkFormat format, int partitions) {
+        return delegate.exportCars(out, format, partitions);
+    }
+
+    @Override
+    public CarStats getCarStats() {
+        return delegate.getCarStats();
+    }
+
+    @Override
+    public String getCollectionVersion() {
+        return delegate.getCollectionVersion();
+    }
+}
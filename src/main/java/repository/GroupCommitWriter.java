@@ -0,0 +1,255 @@
+package repository;
+
+import model.Car;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Групповая фиксация вставок (group commit) для CarRepositoryPostgress.
+// Параллельные save() не выполняют каждый свой INSERT и COMMIT, а встают в очередь.
+// Фоновый поток забирает из очереди до batchSize автомобилей (ожидая не дольше lingerMs
+// после первого) и вставляет их одним запросом в одной транзакции: на всю группу
+// приходится один сброс журнала (WAL) на диск вместо одного на каждый автомобиль.
+// Вызывающий поток ждет фиксации своей группы и получает записанную строку или исключение.
+// Если группа не записалась (например, одна цена не помещается в numeric(10,2)), ее автомобили
+// вставляются заново по одному: ошибку получает только тот, чья строка не проходит
+final class GroupCommitWriter implements AutoCloseable {
+
+    // id выдаются заранее отдельными nextval, поэтому каждый автомобиль группы
+    // точно знает свой id независимо от порядка строк в RETURNING.
+    // Каждый nextval - отдельное значение последовательности, поэтому диапазоны,
+    // которые Hibernate берет той же последовательностью (pooled-lo), не пересекаются с нашими
+    private static final String NEXT_IDS_SQL = "SELECT nextval('car_id_seq') FROM generate_series(1, ?)";
+
+    // Одна и та же строка запроса для группы любого размера: данные передаются массивами.
+    // Тип каждого массива драйвер передает вместе со значением (createArrayOf), поэтому приведения типов не нужны.
+    // То, что записала БД (округленную цену, версию), возвращает getGeneratedKeys() - как в applyBatch
+    // драйвер сам добавляет RETURNING с колонками STORED_COLUMNS. Строки сопоставляются по id
+    private static final String INSERT_SQL = "INSERT INTO car (id, brand, year, price) "
+            + "SELECT * FROM unnest(?, ?, ?, ?)";
+
+    private final ConnectionPool pool;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final long insertTimeoutNanos;
+
+    private final BlockingQueue<Pending> queue;
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    // Автомобиль, ожидающий вставки, и результат для вызывающего потока
+    private record Pending(Car car, CompletableFuture<Car> stored) {
+    }
+
+    GroupCommitWriter(ConnectionPool pool, int batchSize, long lingerMs, int queueCapacity, long insertTimeoutMs) {
+        if (batchSize <= 0 || lingerMs < 0 || insertTimeoutMs <= 0) {
+            throw new IllegalArgumentException("Некорректные параметры группы: batchSize=" + batchSize
+                    + ", lingerMs=" + lingerMs + ", insertTimeoutMs=" + insertTimeoutMs);
+        }
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.insertTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(insertTimeoutMs);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.flusher = new Thread(this::flushLoop, "car-group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Ставит автомобиль в очередь и ждет фиксации его группы. Возвращает записанную строку.
+    // Если очередь заполнена, вызывающий поток ждет места в ней (естественное ограничение нагрузки).
+    // Ожидание - и места в очереди, и фиксации - ограничено insertTimeoutMs: вызывающий поток
+    // не зависает навсегда, даже если фоновый поток остановился
+    Car insert(Car car) {
+        if (closed) {
+            throw new IllegalStateException("Групповая запись остановлена");
+        }
+        Pending pending = new Pending(car, new CompletableFuture<>());
+        long deadline = System.nanoTime() + insertTimeoutNanos;
+        try {
+            if (!queue.offer(pending, insertTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Очередь групповой записи переполнена");
+            }
+            // close() мог успеть разобрать очередь до нашего offer - тогда снимаем запись сами
+            if (closed && queue.remove(pending)) {
+                throw new IllegalStateException("Групповая запись остановлена");
+            }
+            return pending.stored().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Если запись еще в очереди, она точно не будет вставлена. Иначе ее группа уже в работе
+            // и может быть зафиксирована после ошибки
+            boolean dropped = queue.remove(pending);
+            throw new IllegalStateException(dropped
+                    ? "Групповая запись не началась за отведенное время"
+                    : "Групповая запись не подтверждена за отведенное время, автомобиль может быть сохранен", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                // Периодически просыпаемся, чтобы заметить close()
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+
+                // Добираем группу: пока не наберется batchSize или не истечет lingerMs
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                try {
+                    flush(batch);
+                } catch (Throwable e) {
+                    // Фоновый поток не должен останавливаться из-за одной группы (например, OutOfMemoryError):
+                    // ее участники получают ошибку, следующие группы записываются как обычно
+                    for (Pending pending : batch) {
+                        fail(pending, e);
+                    }
+                } finally {
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Вставляет группу в одной транзакции и сообщает результат каждому ожидающему.
+    // Если транзакция не прошла, повторяет вставку по одному автомобилю
+    private void flush(List<Pending> batch) {
+        try {
+            complete(batch, insertAll(batch));
+        } catch (SQLException | RuntimeException e) {
+            // Транзакция откатилась целиком (пул откатывает незафиксированное при возврате соединения):
+            // ни один автомобиль группы не сохранен
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+                return;
+            }
+            for (Pending pending : batch) {
+                try {
+                    complete(List.of(pending), insertAll(List.of(pending)));
+                } catch (SQLException | RuntimeException single) {
+                    fail(pending, single);
+                }
+            }
+        }
+    }
+
+    // Вставляет автомобили одним запросом в одной транзакции.
+    // Возвращает записанные строки в порядке группы
+    private List<Car> insertAll(List<Pending> batch) throws SQLException {
+        int size = batch.size();
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+
+            Long[] ids = new Long[size];
+            try (PreparedStatement statement = connection.prepareStatement(NEXT_IDS_SQL)) {
+                statement.setInt(1, size);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    for (int i = 0; i < size && resultSet.next(); i++) {
+                        ids[i] = resultSet.getLong(1);
+                    }
+                }
+            }
+
+            String[] brands = new String[size];
+            Integer[] years = new Integer[size];
+            BigDecimal[] prices = new BigDecimal[size];
+            for (int i = 0; i < size; i++) {
+                Car car = batch.get(i).car();
+                brands[i] = car.getBrand();
+                years[i] = car.getYear();
+                prices[i] = car.getPrice();
+            }
+
+            Map<Long, Car> stored = new HashMap<>(size * 2);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL,
+                    CarRepositoryPostgress.STORED_COLUMNS)) {
+                statement.setArray(1, connection.createArrayOf("bigint", ids));
+                statement.setArray(2, connection.createArrayOf("varchar", brands));
+                statement.setArray(3, connection.createArrayOf("int4", years));
+                statement.setArray(4, connection.createArrayOf("numeric", prices));
+                statement.executeUpdate();
+                try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                    while (resultSet.next()) {
+                        Car car = CarRepositoryPostgress.mapCar(resultSet);
+                        stored.put(car.getId(), car);
+                    }
+                }
+            }
+            connection.commit();
+
+            // Порядок ids совпадает с порядком группы - по нему находим строку каждого автомобиля
+            List<Car> inOrder = new ArrayList<>(size);
+            for (Long id : ids) {
+                inOrder.add(stored.get(id));
+            }
+            return inOrder;
+        }
+    }
+
+    // Передает каждому ожидающему его записанную строку
+    private static void complete(List<Pending> batch, List<Car> stored) {
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).stored().complete(stored.get(i));
+        }
+    }
+
+    private static void fail(Pending pending, Throwable e) {
+        pending.stored().completeExceptionally(
+                new RuntimeException("Групповая вставка не выполнена: " + e.getMessage(), e));
+    }
+
+    // Останавливает фоновый поток, дописав то, что уже в очереди.
+    // Записи, попавшие в очередь после остановки, завершаются ошибкой
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.stored().completeExceptionally(new IllegalStateException("Групповая запись остановлена"));
+        }
+    }
+}
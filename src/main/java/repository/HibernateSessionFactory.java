@@ -0,0 +1,37 @@
+package repository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+
+// Единственная на всё веб-приложение фабрика сессий Hibernate.
+// SessionFactory дорогая в создании и потокобезопасная, поэтому ее создают один раз,
+// а вот Session (EntityManager) - дешевая и НЕ потокобезопасная, ее открывают на каждую операцию
+public final class HibernateSessionFactory {
+
+    private static final String CONFIG_PATH = "hibernate/postgres.cfg.xml";
+
+    // Фабрика создается лениво при первом обращении (идиома holder-класса)
+    private static class DefaultHolder {
+        private static final SessionFactory INSTANCE = new Configuration()
+                .configure(CONFIG_PATH)
+                .buildSessionFactory();
+    }
+
+    // Признак того, что фабрика уже была создана (чтобы не создавать ее при закрытии)
+    private static volatile boolean defaultCreated;
+
+    private HibernateSessionFactory() {
+    }
+
+    public static SessionFactory getDefault() {
+        defaultCreated = true;
+        return DefaultHolder.INSTANCE;
+    }
+
+    // Закрывает фабрику, если она создавалась. Вызывается при остановке приложения
+    public static void closeDefault() {
+        if (defaultCreated && !DefaultHolder.INSTANCE.isClosed()) {
+            DefaultHolder.INSTANCE.close();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package repository;
+
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import model.Car;
+import model.CarFilter;
+import model.CarOperation;
+import model.CarOperationResult;
+import model.CarStats;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+// Обертка над любым CarRepository (паттерн "декоратор"), которая измеряет каждый метод:
+// задержку, количество вызовов, ошибки и количество одновременно выполняющихся вызовов.
+// Метрики каждого метода создаются один раз в конструкторе, поэтому замер не обращается
+// к реестру и не создает объектов. Ошибкой считается любое исключение из delegate
+public class MetricsCarRepository implements CarRepository {
+
+    private static final String NAME = "car_repository_operation_seconds";
+    private static final String HELP = "Latency of CarRepository operations";
+
+    private final CarRepository delegate;
+
+    private final OperationMetrics getAll;
+    private final OperationMetrics forEachCar;
+    private final OperationMetrics getPage;
+    private final OperationMetrics find;
+    private final OperationMetrics getById;
+    private final OperationMetrics getByIds;
+    private final OperationMetrics save;
+    private final OperationMetrics update;
+    private final OperationMetrics updateIfVersion;
+    private final OperationMetrics delete;
+    private final OperationMetrics applyBatch;
+    private final OperationMetrics importCars;
+    private final OperationMetrics exportCars;
+    private final OperationMetrics getCarStats;
+    private final OperationMetrics getCollectionVersion;
+
+    public MetricsCarRepository(CarRepository delegate, MetricsRegistry registry) {
+        this.delegate = delegate;
+        this.getAll = registry.operation(NAME, HELP, "operation", "getAll");
+        this.forEachCar = registry.operation(NAME, HELP, "operation", "forEachCar");
+        this.getPage = registry.operation(NAME, HELP, "operation", "getPage");
+        this.find = registry.operation(NAME, HELP, "operation", "find");
+        this.getById = registry.operation(NAME, HELP, "operation", "getById");
+        this.getByIds = registry.operation(NAME, HELP, "operation", "getByIds");
+        this.save = registry.operation(NAME, HELP, "operation", "save");
+        this.update = registry.operation(NAME, HELP, "operation", "update");
+        this.updateIfVersion = registry.operation(NAME, HELP, "operation", "updateIfVersion");
+        this.delete = registry.operation(NAME, HELP, "operation", "delete");
+        this.applyBatch = registry.operation(NAME, HELP, "operation", "applyBatch");
+        this.importCars = registry.operation(NAME, HELP, "operation", "importCars");
+        this.exportCars = registry.operation(NAME, HELP, "operation", "exportCars");
+        this.getCarStats = registry.operation(NAME, HELP, "operation", "getCarStats");
+        this.getCollectionVersion = registry.operation(NAME, HELP, "operation", "getCollectionVersion");
+    }
+
+    @Override
+    public List<Car> getAll() {
+        long start = getAll.start();
+        boolean failed = true;
+        try {
+            List<Car> result = delegate.getAll();
+            failed = false;
+            return result;
+        } finally {
+            getAll.stop(start, failed);
+        }
+    }
+
+    // Время обхода включает запись ответа клиенту внутри action
+    @Override
+    public void forEachCar(Consumer<? super Car> action) {
+        long start = forEachCar.start();
+        boolean failed = true;
+        try {
+            delegate.forEachCar(action);
+            failed = false;
+        } finally {
+            forEachCar.stop(start, failed);
+        }
+    }
+
+    @Override
+    public List<Car> getPage(long afterId, int limit) {
+        long start = getPage.start();
+        boolean failed = true;
+        try {
+            List<Car> result = delegate.getPage(afterId, limit);
+            failed = false;
+            return result;
+        } finally {
+            getPage.stop(start, failed);
+        }
+    }
+
+    @Override
+    public List<Car> find(CarFilter filter) {
+        long start = find.start();
+        boolean failed = true;
+        try {
+            List<Car> result = delegate.find(filter);
+            failed = false;
+            return result;
+        } finally {
+            find.stop(start, failed);
+        }
+    }
+
+    @Override
+    public Car getById(long id) {
+        long start = getById.start();
+        boolean failed = true;
+        try {
+            Car result = delegate.getById(id);
+            failed = false;
+            return result;
+        } finally {
+            getById.stop(start, failed);
+        }
+    }
+
+    @Override
+    public List<Car> getByIds(Collection<Long> ids) {
+        long start = getByIds.start();
+        boolean failed = true;
+        try {
+            List<Car> result = delegate.getByIds(ids);
+            failed = false;
+            return result;
+        } finally {
+            getByIds.stop(start, failed);
+        }
+    }
+
+    @Override
+    public Car save(Car car) {
+        long start = save.start();
+        boolean failed = true;
+        try {
+            Car result = delegate.save(car);
+            failed = false;
+            return result;
+        } finally {
+            save.stop(start, failed);
+        }
+    }
+
+    @Override
+    public Car update(Car car) {
+        long start = update.start();
+        boolean failed = true;
+        try {
+            Car result = delegate.update(car);
+            failed = false;
+            return result;
+        } finally {
+            update.stop(start, failed);
+        }
+    }
+
+    @Override
+    public Car update(Car car, long expectedVersion) {
+        long start = updateIfVersion.start();
+        boolean failed = true;
+        try {
+            Car result = delegate.update(car, expectedVersion);
+            failed = false;
+            return result;
+        } finally {
+            updateIfVersion.stop(start, failed);
+        }
+    }
+
+    @Override
+    public Car delete(long id) {
+        long start = delete.start();
+        boolean failed = true;
+        try {
+            Car result = delegate.delete(id);
+            failed = false;
+            return result;
+        } finally {
+            delete.stop(start, failed);
+        }
+    }
+
+    @Override
+    public List<CarOperationResult> applyBatch(List<CarOperation> operations) {
+        long start = applyBatch.start();
+        boolean failed = true;
+        try {
+            List<CarOperationResult> result = delegate.applyBatch(operations);
+            failed = false;
+            return result;
+        } finally {
+            applyBatch.stop(start, failed);
+        }
+    }
+
+    @Override
+    public long importCars(InputStream in, BulkFormat format, LongConsumer progress) {
+        long start = importCars.start();
+        boolean failed = true;
+        try {
+            long result = delegate.importCars(in, format, progress);
+            failed = false;
+            return result;
+        } finally {
+            importCars.stop(start, failed);
+        }
+    }
+
+    // Время выгрузки включает запись ответа клиенту
+    @Override
+    public long exportCars(OutputStream out, BulkFormat format, int partitions) {
+        long start = exportCars.start();
+        boolean failed = true;
+        try {
+            long result = delegate.exportCars(out, format, partitions);
+            failed = false;
+            return result;
+        } finally {
+            exportCars.stop(start, failed);
+        }
+    }
+
+    @Override
+    public CarStats getCarStats() {
+        long start = getCarStats.start();
+        boolean failed = true;
+        try {
+            CarStats result = delegate.getCarStats();
+            failed = false;
+            return result;
+        } finally {
+            getCarStats.stop(start, failed);
+        }
+    }
+
+    @Override
+    public String getCollectionVersion() {
+        long start = getCollectionVersion.start();
+        boolean failed = true;
+        try {
+            String result = delegate.getCollectionVersion();
+            failed = false;
+            return result;
+        } finally {
+            getCollectionVersion.stop(start, failed);
+        }
+    }
+
+    // Обернутый репозиторий (например, чтобы добраться до кэша под оберткой)
+    public CarRepository getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,77 @@
+package repository;
+
+import model.PriceStats;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Накопитель статистики цен для репозиториев, которые считают статистику сами (в памяти).
+// Накопители можно объединять через merge(), поэтому они подходят для параллельной свертки
+final class PriceAccumulator {
+
+    // Перцентили, которые возвращает CarRepository.getCarStats()
+    static final double[] PERCENTILES = {0.5, 0.9, 0.95, 0.99};
+
+    private long count;
+    private long pricedCount;
+    private BigDecimal sum = BigDecimal.ZERO;
+    private BigDecimal min;
+    private BigDecimal max;
+
+    void add(BigDecimal price) {
+        count++;
+        if (price == null) {
+            return;
+        }
+        pricedCount++;
+        sum = sum.add(price);
+        if (min == null || price.compareTo(min) < 0) min = price;
+        if (max == null || price.compareTo(max) > 0) max = price;
+    }
+
+    PriceAccumulator merge(PriceAccumulator other) {
+        count += other.count;
+        pricedCount += other.pricedCount;
+        sum = sum.add(other.sum);
+        if (other.min != null && (min == null || other.min.compareTo(min) < 0)) min = other.min;
+        if (other.max != null && (max == null || other.max.compareTo(max) > 0)) max = other.max;
+        return this;
+    }
+
+    PriceStats toStats() {
+        BigDecimal avg = pricedCount == 0 ? null
+                : sum.divide(BigDecimal.valueOf(pricedCount), 2, RoundingMode.HALF_UP);
+        return new PriceStats(count, min, max, avg);
+    }
+
+    // Превращает накопители по группам в статистику, отсортированную по ключу группы
+    static <K> Map<K, PriceStats> toStats(Map<K, PriceAccumulator> groups) {
+        Map<K, PriceStats> result = new TreeMap<>();
+        groups.forEach((key, accumulator) -> result.put(key, accumulator.toStats()));
+        return result;
+    }
+
+    // Номер элемента отсортированного массива длины n, который является перцентилем p
+    // (метод ближайшего ранга - так же считает percentile_disc в PostgreSQL)
+    static int rankIndex(double p, int n) {
+        return Math.max(0, (int) Math.ceil(p * n) - 1);
+    }
+
+    // Имя перцентиля в ответе: 0.5 -> "p50", 0.99 -> "p99"
+    static String percentileName(double p) {
+        return "p" + BigDecimal.valueOf(p * 100).stripTrailingZeros().toPlainString();
+    }
+
+    // Перцентили по отсортированному по возрастанию массиву цен
+    static Map<String, BigDecimal> percentiles(BigDecimal[] sortedPrices) {
+        Map<String, BigDecimal> result = new LinkedHashMap<>();
+        for (double p : PERCENTILES) {
+            result.put(percentileName(p),
+                    sortedPrices.length == 0 ? null : sortedPrices[rankIndex(p, sortedPrices.length)]);
+        }
+        return result;
+    }
+}
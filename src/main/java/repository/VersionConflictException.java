@@ -0,0 +1,24 @@
+package repository;
+
+// Исключение для условного обновления: версия автомобиля в хранилище
+// не совпала с ожидаемой (его уже изменил кто-то другой)
+public class VersionConflictException extends RuntimeException {
+
+    private final long currentVersion;
+
+    public VersionConflictException(long id, long expectedVersion, long currentVersion) {
+        super("Автомобиль с id " + id + " уже изменен: ожидалась версия " + expectedVersion
+                + ", текущая версия " + currentVersion);
+        this.currentVersion = currentVersion;
+    }
+
+    // Условие не выполнено, но текущая версия неизвестна (например, автомобиля уже нет)
+    public VersionConflictException(String message) {
+        super(message);
+        this.currentVersion = -1;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
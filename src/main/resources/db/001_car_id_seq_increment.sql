@@ -0,0 +1,6 @@
+-- Hibernate (Car.hbm.xml) берет id блоками по 50 с оптимизатором pooled-lo:
+-- одно значение nextval = v дает ему диапазон v .. v + 49.
+-- Поэтому шаг последовательности должен совпадать с increment_size.
+-- INSERT без id (CarRepositoryPostgress) по-прежнему берет nextval по умолчанию
+-- и никогда не попадает в диапазон, выданный Hibernate.
+ALTER SEQUENCE car_id_seq INCREMENT BY 50;
@@ -0,0 +1,6 @@
+-- B-tree индексы для поиска GET /cars?brand=&minYear=&maxYear=&minPrice=&maxPrice=&sort=
+-- Точное совпадение по марке и диапазоны по году и цене читаются по индексу,
+-- а не полным просмотром таблицы. Эти же индексы отдают строки уже отсортированными.
+CREATE INDEX IF NOT EXISTS car_brand_idx ON car (brand);
+CREATE INDEX IF NOT EXISTS car_year_idx ON car (year);
+CREATE INDEX IF NOT EXISTS car_price_idx ON car (price);
@@ -0,0 +1,3 @@
+-- Версия записи для ETag и условных обновлений (If-Match).
+-- Каждый UPDATE увеличивает version на 1, новая запись начинается с 0.
+ALTER TABLE car ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
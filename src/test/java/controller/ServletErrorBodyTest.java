@@ -0,0 +1,239 @@
+package controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import model.Car;
+import model.CarOperation;
+import model.CarOperationResult;
+import model.CarStats;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import repository.BulkFormat;
+import repository.CarRepositoryMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Тела ответов с ошибкой у всех сервлетов - корректный JSON, даже если сообщение
+// исключения содержит кавычки, обратную косую черту и переводы строк.
+// Приложение запускается во встроенном Томкате с тем же web.xml, что и в сборке
+class ServletErrorBodyTest {
+
+    // Сообщение, которое сломало бы JSON, склеенный из строк
+    private static final String MESSAGE = "bad \"quote\" \\ back\nslash";
+
+    private static final long FAILING_ID = 666;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+
+    private static Tomcat tomcat;
+    private static String base;
+
+    // Хранилище, которое на каждое обращение, кроме чтения списка, бросает исключение с MESSAGE
+    private static final class FailingStore extends CarRepositoryMap {
+        @Override
+        public Car getById(long id) {
+            if (id == FAILING_ID) {
+                throw new IllegalStateException(MESSAGE);
+            }
+            return super.getById(id);
+        }
+
+        @Override
+        public List<Car> getByIds(Collection<Long> ids) {
+            if (ids.contains(FAILING_ID)) {
+                throw new IllegalStateException(MESSAGE);
+            }
+            return super.getByIds(ids);
+        }
+
+        @Override
+        public Car update(Car car) {
+            throw new IllegalStateException(MESSAGE);
+        }
+
+        @Override
+        public Car delete(long id) {
+            throw new IllegalStateException(MESSAGE);
+        }
+
+        @Override
+        public List<CarOperationResult> applyBatch(List<CarOperation> operations) {
+            throw new IllegalStateException(MESSAGE);
+        }
+
+        @Override
+        public long importCars(InputStream in, BulkFormat format, LongConsumer progress) {
+            throw new IllegalStateException(MESSAGE);
+        }
+
+        @Override
+        public long exportCars(OutputStream out, BulkFormat format, int partitions) {
+            throw new IllegalStateException(MESSAGE);
+        }
+
+        @Override
+        public CarStats getCarStats() {
+            throw new IllegalStateException(MESSAGE);
+        }
+    }
+
+    @BeforeAll
+    static void startTomcat() throws IOException, LifecycleException {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.setAddDefaultWebXmlToWebapp(false);
+        tomcat.getConnector();
+        Context context = tomcat.addWebapp("", new File("src/main/webapp").getAbsolutePath());
+        ((StandardJarScanner) context.getJarScanner()).setScanClassPath(false);
+        FailingStore backend = new FailingStore();
+        context.addServletContainerInitializer((classes, servletContext) ->
+                servletContext.setAttribute(AppContextListener.CAR_REPOSITORY_BACKEND, backend), null);
+        tomcat.start();
+        base = "http://localhost:" + tomcat.getConnector().getLocalPort();
+    }
+
+    @AfterAll
+    static void stopTomcat() throws LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    private static HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return CLIENT.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path));
+    }
+
+    private static HttpRequest.BodyPublisher json(String body) {
+        return HttpRequest.BodyPublishers.ofString(body);
+    }
+
+    // Разбирает тело как JSON и возвращает текст ошибки
+    private static String error(HttpResponse<String> response, int expectedStatus) throws IOException {
+        assertEquals(expectedStatus, response.statusCode(), response.body());
+        JsonNode body = MAPPER.readTree(response.body());
+        assertTrue(body.get("error").isTextual(), response.body());
+        return body.get("error").asText();
+    }
+
+    @Test
+    void carByIdFailure() throws Exception {
+        HttpResponse<String> response = send(request("/cars?id=" + FAILING_ID));
+        assertTrue(error(response, 500).contains(MESSAGE));
+    }
+
+    @Test
+    void conflictingParameters() throws Exception {
+        HttpResponse<String> response = send(request("/cars?id=1&brand=BMW"));
+        error(response, 400);
+    }
+
+    @Test
+    void invalidSearchParameter() throws Exception {
+        HttpResponse<String> response = send(request("/cars?brand=BMW&limit=%22x%22"));
+        assertTrue(error(response, 400).contains("\"x\""));
+    }
+
+    @Test
+    void invalidPageParameter() throws Exception {
+        HttpResponse<String> response = send(request("/cars?afterId=%22x%5C%22"));
+        assertTrue(error(response, 400).contains("\"x\\\""));
+    }
+
+    @Test
+    void updateFailure() throws Exception {
+        HttpResponse<String> response = send(request("/cars?id=1")
+                .header("Content-Type", "application/json")
+                .PUT(json("{\"brand\":\"BMW\",\"year\":2020,\"price\":30000}")));
+        assertTrue(error(response, 400).contains(MESSAGE));
+    }
+
+    @Test
+    void deleteFailure() throws Exception {
+        HttpResponse<String> response = send(request("/cars?id=1").DELETE());
+        assertTrue(error(response, 400).contains(MESSAGE));
+    }
+
+    @Test
+    void malformedBatch() throws Exception {
+        HttpResponse<String> response = send(request("/cars/batch")
+                .header("Content-Type", "application/json")
+                .POST(json("[{\"op\":\"create\",\"car\":{\"brand\":\"a\\\"b")));
+        error(response, 400);
+    }
+
+    @Test
+    void batchFailure() throws Exception {
+        HttpResponse<String> response = send(request("/cars/batch")
+                .header("Content-Type", "application/json")
+                .POST(json("[{\"op\":\"delete\",\"id\":1}]")));
+        assertTrue(error(response, 500).contains(MESSAGE));
+    }
+
+    @Test
+    void statsFailure() throws Exception {
+        HttpResponse<String> response = send(request("/cars/stats"));
+        assertTrue(error(response, 500).contains(MESSAGE));
+    }
+
+    @Test
+    void exportUnsupportedFormat() throws Exception {
+        HttpResponse<String> response = send(request("/cars/export?format=xml"));
+        error(response, 400);
+    }
+
+    @Test
+    void exportInvalidParallel() throws Exception {
+        HttpResponse<String> response = send(request("/cars/export?parallel=%22x%5C%22"));
+        assertTrue(error(response, 400).contains("\"x\\\""));
+    }
+
+    @Test
+    void exportFailure() throws Exception {
+        HttpResponse<String> response = send(request("/cars/export?format=ndjson"));
+        assertTrue(error(response, 500).contains(MESSAGE));
+    }
+
+    @Test
+    void importUnsupportedFormat() throws Exception {
+        HttpResponse<String> response = send(request("/cars/import?format=xml").POST(json("")));
+        error(response, 415);
+    }
+
+    @Test
+    void importFailure() throws Exception {
+        HttpResponse<String> response = send(request("/cars/import?format=ndjson")
+                .POST(json("{\"brand\":\"BMW\",\"year\":2020,\"price\":30000}\n")));
+        // Ответ - NDJSON: ошибка приходит отдельной строкой
+        assertTrue(error(response, 500).contains(MESSAGE));
+    }
+
+    @Test
+    void invalidLastEventId() throws Exception {
+        HttpResponse<String> response = send(request("/cars/events").header("Last-Event-ID", "a\"b\\c"));
+        assertTrue(error(response, 400).contains("a\"b\\c"));
+    }
+}
@@ -0,0 +1,210 @@
+package repository;
+
+import model.Car;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Объединение getById в группы: отсутствующий id, ошибки хранилища, медленная группа,
+// отдельные копии для ожидающих, ограничение одновременных чтений и чтение после close()
+class BatchingCarRepositoryTest {
+
+    // Хранилище, которое можно остановить на чтении группы с заданным id или заставить бросить ошибку
+    private static final class ControlledStore extends CarRepositoryMap {
+        private volatile long blockedId = -1;
+        private final CountDownLatch reached = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile Error nextError;
+        private volatile long readDelayMs;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public List<Car> getByIds(Collection<Long> ids) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Error error = nextError;
+                if (error != null) {
+                    nextError = null;
+                    throw error;
+                }
+                if (ids.contains(blockedId)) {
+                    reached.countDown();
+                    await(release);
+                }
+                if (readDelayMs > 0) {
+                    sleep(readDelayMs);
+                }
+                return super.getByIds(ids);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private BatchingCarRepository repository;
+
+    @AfterEach
+    void close() {
+        executor.shutdownNow();
+        if (repository != null) {
+            repository.close();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new AssertionError("Не дождались другого потока");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    void missingIdReturnsNull() {
+        repository = new BatchingCarRepository(new ControlledStore(), 16, 100, 2);
+
+        assertNull(repository.getById(99));
+        assertEquals("Mazda", repository.getById(1).getBrand());
+    }
+
+    @Test
+    void errorReachesCallerAndLaterReadsWork() {
+        ControlledStore store = new ControlledStore();
+        repository = new BatchingCarRepository(store, 16, 100, 2);
+
+        store.nextError = new StackOverflowError();
+        assertThrows(StackOverflowError.class, () -> repository.getById(1));
+
+        // Потоки группировки и чтения не остановились
+        assertEquals("Mazda", repository.getById(1).getBrand());
+        assertEquals("VW", repository.getById(2).getBrand());
+    }
+
+    @Test
+    void slowGroupDoesNotBlockOtherIds() throws Exception {
+        ControlledStore store = new ControlledStore();
+        store.blockedId = 1;
+        repository = new BatchingCarRepository(store, 16, 0, 2);
+
+        Future<Car> slow = executor.submit(() -> repository.getById(1));
+        await(store.reached);
+
+        // Группа с id 1 занимает одно чтение из двух - id 2 читается вторым
+        Future<Car> fast = executor.submit(() -> repository.getById(2));
+        assertEquals("VW", fast.get(5, TimeUnit.SECONDS).getBrand());
+
+        store.release.countDown();
+        assertEquals("Mazda", slow.get(5, TimeUnit.SECONDS).getBrand());
+    }
+
+    @Test
+    void waitersGetDistinctCopies() throws Exception {
+        ControlledStore store = new ControlledStore();
+        store.blockedId = 1;
+        // Одно чтение: пока группа с id 1 стоит, запросы id 3 ждут в очереди вместе
+        repository = new BatchingCarRepository(store, 16, 0, 1);
+
+        Future<Car> blocker = executor.submit(() -> repository.getById(1));
+        await(store.reached);
+
+        int waiters = 4;
+        CountDownLatch started = new CountDownLatch(waiters);
+        List<Future<Car>> futures = new ArrayList<>();
+        for (int i = 0; i < waiters; i++) {
+            futures.add(executor.submit(() -> {
+                started.countDown();
+                return repository.getById(3);
+            }));
+        }
+        await(started);
+        sleep(100);
+        store.release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+
+        List<Car> cars = new ArrayList<>();
+        for (Future<Car> future : futures) {
+            cars.add(future.get(5, TimeUnit.SECONDS));
+        }
+        for (int i = 0; i < cars.size(); i++) {
+            for (int j = i + 1; j < cars.size(); j++) {
+                assertNotSame(cars.get(i), cars.get(j));
+            }
+        }
+        // Изменение полученного объекта не видно другим потокам
+        cars.get(0).setBrand("Changed");
+        assertEquals("Ford", cars.get(1).getBrand());
+        assertEquals("Ford", repository.getById(3).getBrand());
+    }
+
+    @Test
+    void concurrentReadsStayWithinLimit() throws Exception {
+        ControlledStore store = new ControlledStore();
+        store.readDelayMs = 2;
+        int maxConcurrentBatches = 2;
+        repository = new BatchingCarRepository(store, 4, 0, maxConcurrentBatches);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < 50; i++) {
+                    long id = 1 + random.nextInt(8);
+                    Car car = repository.getById(id);
+                    assertTrue(id <= 5 ? car != null && car.getId() == id : car == null);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+
+        assertTrue(store.maxInFlight.get() <= maxConcurrentBatches,
+                "одновременно читалось групп: " + store.maxInFlight.get());
+    }
+
+    @Test
+    void readsWorkAfterClose() {
+        ControlledStore store = new ControlledStore();
+        repository = new BatchingCarRepository(store, 16, 100, 2);
+        repository.close();
+
+        assertEquals("Mazda", repository.getById(1).getBrand());
+        assertNull(repository.getById(99));
+
+        store.nextError = new StackOverflowError();
+        assertThrows(StackOverflowError.class, () -> repository.getById(1));
+    }
+}
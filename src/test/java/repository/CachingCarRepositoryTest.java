@@ -0,0 +1,210 @@
+package repository;
+
+import model.Car;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+// Кэш не должен запоминать значение, прочитанное до записи, которая завершилась во время чтения,
+// и не должен затирать результат более новой записи результатом более старой
+class CachingCarRepositoryTest {
+
+    private static final long TTL_MS = 60_000;
+
+    // Хранилище, чтение или запись которого можно остановить между обращением к данным и возвратом
+    private static final class PausingStore extends CarRepositoryMap {
+        private volatile Pause pause;
+
+        private <T> T paused(String method, Supplier<T> call) {
+            T result = call.get();
+            Pause current = pause;
+            if (current != null && current.method.equals(method)) {
+                pause = null;
+                current.reached.countDown();
+                await(current.resume);
+            }
+            return result;
+        }
+
+        @Override
+        public List<Car> getAll() {
+            return paused("getAll", super::getAll);
+        }
+
+        @Override
+        public Car getById(long id) {
+            return paused("getById", () -> super.getById(id));
+        }
+
+        @Override
+        public String getCollectionVersion() {
+            return paused("getCollectionVersion", super::getCollectionVersion);
+        }
+
+        @Override
+        public Car update(Car car) {
+            return paused("update", () -> super.update(car));
+        }
+
+        Pause pauseNext(String method) {
+            Pause next = new Pause(method);
+            pause = next;
+            return next;
+        }
+    }
+
+    private static final class Pause {
+        private final String method;
+        private final CountDownLatch reached = new CountDownLatch(1);
+        private final CountDownLatch resume = new CountDownLatch(1);
+
+        private Pause(String method) {
+            this.method = method;
+        }
+
+        void awaitReached() {
+            await(reached);
+        }
+
+        void resume() {
+            resume.countDown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new AssertionError("Не дождались другого потока");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+
+    private static Car car(long id, String brand) {
+        return new Car(id, brand, 2020, new BigDecimal("1000.00"));
+    }
+
+    @Test
+    void listReadBeforeWriteIsNotCached() throws Exception {
+        PausingStore store = new PausingStore();
+        CachingCarRepository cache = new CachingCarRepository(store, 100, TTL_MS);
+
+        Pause pause = store.pauseNext("getAll");
+        CompletableFuture<List<Car>> staleRead = CompletableFuture.supplyAsync(cache::getAll);
+        pause.awaitReached();
+        cache.update(car(1, "Updated"));
+        pause.resume();
+        staleRead.get(10, TimeUnit.SECONDS);
+
+        assertEquals("Updated", cache.getAll().get(0).getBrand());
+    }
+
+    @Test
+    void carReadBeforeWriteIsNotCached() throws Exception {
+        PausingStore store = new PausingStore();
+        CachingCarRepository cache = new CachingCarRepository(store, 100, TTL_MS);
+
+        Pause pause = store.pauseNext("getById");
+        CompletableFuture<Car> staleRead = CompletableFuture.supplyAsync(() -> cache.getById(1));
+        pause.awaitReached();
+        cache.update(car(1, "Updated"));
+        pause.resume();
+        assertEquals("Mazda", staleRead.get(10, TimeUnit.SECONDS).getBrand());
+
+        assertEquals("Updated", cache.getById(1).getBrand());
+    }
+
+    @Test
+    void collectionVersionReadBeforeWriteIsNotCached() throws Exception {
+        PausingStore store = new PausingStore();
+        CachingCarRepository cache = new CachingCarRepository(store, 100, TTL_MS);
+
+        Pause pause = store.pauseNext("getCollectionVersion");
+        CompletableFuture<String> staleRead = CompletableFuture.supplyAsync(cache::getCollectionVersion);
+        pause.awaitReached();
+        cache.update(car(1, "Updated"));
+        pause.resume();
+        String before = staleRead.get(10, TimeUnit.SECONDS);
+
+        assertNotEquals(before, cache.getCollectionVersion());
+        assertEquals(store.getCollectionVersion(), cache.getCollectionVersion());
+    }
+
+    @Test
+    void olderWriteResultDoesNotOverwriteNewer() throws Exception {
+        PausingStore store = new PausingStore();
+        CachingCarRepository cache = new CachingCarRepository(store, 100, TTL_MS);
+
+        // Первая запись применена в хранилище, но ее результат еще не вернулся в кэш
+        Pause pause = store.pauseNext("update");
+        CompletableFuture<Car> older = CompletableFuture.supplyAsync(() -> cache.update(car(1, "Older")));
+        pause.awaitReached();
+        cache.update(car(1, "Newer"));
+        pause.resume();
+        older.get(10, TimeUnit.SECONDS);
+
+        assertEquals("Newer", cache.getById(1).getBrand());
+    }
+
+    @Test
+    void cacheMatchesStoreAfterConcurrentReadsAndWrites() throws Exception {
+        CarRepositoryMap store = new CarRepositoryMap();
+        CachingCarRepository cache = new CachingCarRepository(store, 100, TTL_MS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(thread);
+                    for (int i = 0; i < 2000; i++) {
+                        long id = 1 + random.nextInt(5);
+                        switch (random.nextInt(4)) {
+                            case 0 -> cache.update(car(id, "B" + thread + "-" + i));
+                            case 1 -> cache.getById(id);
+                            case 2 -> cache.getAll();
+                            default -> cache.getCollectionVersion();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Записей больше нет: всё, что осталось в кэше, должно совпадать с хранилищем
+        assertEquals(brands(store.getAll()), brands(cache.getAll()));
+        assertEquals(store.getCollectionVersion(), cache.getCollectionVersion());
+        for (long id = 1; id <= 5; id++) {
+            assertEquals(store.getById(id).getBrand(), cache.getById(id).getBrand());
+        }
+    }
+
+    private static List<String> brands(List<Car> cars) {
+        List<String> brands = new ArrayList<>();
+        for (Car car : cars) {
+            brands.add(car.getId() + ":" + car.getBrand());
+        }
+        return brands;
+    }
+}
@@ -0,0 +1,165 @@
+package repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Пул соединений поверх H2 в памяти: выдача и возврат, ограничение размера,
+// повторный close() обертки и состояние соединения для следующего клиента
+class ConnectionPoolTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private ConnectionPool pool;
+
+    private ConnectionPool newPool(int maxSize, long acquireTimeoutMs) {
+        String url = "jdbc:h2:mem:pool" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        pool = new ConnectionPool(url, "sa", "", 0, maxSize, acquireTimeoutMs, 300_000, 30_000);
+        return pool;
+    }
+
+    @AfterEach
+    void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void returnedConnectionIsReused() throws SQLException {
+        ConnectionPool pool = newPool(2, 1000);
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.isValid(1));
+        }
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.isValid(1));
+        }
+        assertEquals(1, pool.getStats().created());
+        assertEquals(2, pool.getStats().acquired());
+    }
+
+    @Test
+    void acquireTimesOutWhenAllConnectionsAreBusy() throws SQLException {
+        ConnectionPool pool = newPool(1, 100);
+        try (Connection ignored = pool.getConnection()) {
+            assertThrows(SQLException.class, pool::getConnection);
+        }
+        assertEquals(1, pool.getStats().timeouts());
+        // После возврата соединение снова доступно
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.isValid(1));
+        }
+    }
+
+    @Test
+    void secondCloseOfWrapperDoesNotReleaseTwice() throws SQLException {
+        ConnectionPool pool = newPool(1, 100);
+        Connection first = pool.getConnection();
+        first.close();
+        first.close();
+
+        try (Connection ignored = pool.getConnection()) {
+            // Если бы второй close() вернул разрешение еще раз, пул выдал бы второе соединение
+            assertThrows(SQLException.class, pool::getConnection);
+        }
+    }
+
+    @Test
+    void closedWrapperCannotBeUsed() throws SQLException {
+        ConnectionPool pool = newPool(1, 100);
+        Connection connection = pool.getConnection();
+        connection.close();
+
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, connection::createStatement);
+    }
+
+    @Test
+    void releaseRollsBackUnfinishedTransaction() throws SQLException {
+        ConnectionPool pool = newPool(1, 1000);
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE t (id INT)");
+        }
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            statement.execute("INSERT INTO t VALUES (1)");
+            // Не фиксируем: возврат в пул должен откатить вставку
+        }
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT count(*) FROM t")) {
+            assertTrue(connection.getAutoCommit());
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    void releaseRestoresSessionDefaults() throws SQLException {
+        ConnectionPool pool = newPool(1, 1000);
+        int defaultIsolation;
+        try (Connection connection = pool.getConnection()) {
+            defaultIsolation = connection.getTransactionIsolation();
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        }
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.getAutoCommit());
+            assertFalse(connection.isReadOnly());
+            assertEquals(defaultIsolation, connection.getTransactionIsolation());
+        }
+        assertEquals(1, pool.getStats().created());
+    }
+
+    @Test
+    void concurrentBorrowersNeverExceedMaxSize() throws Exception {
+        int maxSize = 3;
+        ConnectionPool pool = newPool(maxSize, 10_000);
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        try (Connection connection = pool.getConnection()) {
+                            maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                            assertTrue(connection.isValid(1));
+                            inUse.decrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(maxInUse.get() <= maxSize, "одновременно выдано " + maxInUse.get());
+        assertTrue(pool.getStats().created() <= maxSize);
+        assertEquals(0, pool.getStats().active());
+        assertEquals(16 * 200, pool.getStats().acquired());
+    }
+}
@@ -0,0 +1,171 @@
+package repository;
+
+import model.Car;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Групповая вставка поверх H2 в режиме PostgreSQL: записанные строки возвращаются вызывающим,
+// ошибка одной строки или одной группы не задевает остальные, ожидание ограничено по времени
+class GroupCommitWriterTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private ConnectionPool pool;
+    private GroupCommitWriter writer;
+
+    @BeforeEach
+    void createSchema() throws SQLException {
+        String url = "jdbc:h2:mem:group" + DATABASES.incrementAndGet()
+                + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR;DB_CLOSE_DELAY=-1";
+        pool = new ConnectionPool(url, "sa", "", 0, 4, 10_000, 300_000, 30_000);
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SEQUENCE car_id_seq");
+            // Узкая цена, чтобы отдельную строку можно было сделать ошибочной
+            statement.execute("CREATE TABLE car (id bigint DEFAULT nextval('car_id_seq') PRIMARY KEY, "
+                    + "brand varchar(50) NOT NULL, year int NOT NULL, price numeric(6,2) NOT NULL, "
+                    + "version bigint NOT NULL DEFAULT 0)");
+        }
+    }
+
+    @AfterEach
+    void close() {
+        if (writer != null) {
+            writer.close();
+        }
+        pool.close();
+    }
+
+    private static Car car(String brand, String price) {
+        return new Car(brand, 2020, new BigDecimal(price));
+    }
+
+    private int countRows() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT count(*) FROM car")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    void concurrentInsertsReturnStoredRows() throws Exception {
+        writer = new GroupCommitWriter(pool, 8, 20, 100, 10_000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Car>> futures = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String brand = "Brand" + i;
+                futures.add(executor.submit(() -> writer.insert(car(brand, "1000.005"))));
+            }
+            Set<Long> ids = new HashSet<>();
+            for (int i = 0; i < futures.size(); i++) {
+                Car stored = futures.get(i).get(10, TimeUnit.SECONDS);
+                assertNotNull(stored.getId());
+                assertTrue(ids.add(stored.getId()), "повторный id " + stored.getId());
+                // Каждый получает свою строку, а не соседнюю по группе
+                assertEquals("Brand" + i, stored.getBrand());
+                // Цена - такая, как ее записала БД
+                assertEquals(new BigDecimal("1000.01"), stored.getPrice());
+                assertEquals(0, stored.getVersion());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(40, countRows());
+    }
+
+    @Test
+    void invalidRowFailsOnlyItsCaller() throws Exception {
+        // Большое ожидание группы: все четыре вставки попадают в одну транзакцию
+        writer = new GroupCommitWriter(pool, 4, 5_000, 100, 10_000);
+
+        List<CompletableFuture<Car>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String price = i == 2 ? "100000.00" : "10.00";
+            String brand = "Brand" + i;
+            futures.add(CompletableFuture.supplyAsync(() -> writer.insert(car(brand, price))));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            if (i == 2) {
+                ExecutionException e = assertThrows(ExecutionException.class,
+                        futures.get(i)::get);
+                assertInstanceOf(RuntimeException.class, e.getCause());
+            } else {
+                assertEquals("Brand" + i, futures.get(i).get(10, TimeUnit.SECONDS).getBrand());
+            }
+        }
+        assertEquals(3, countRows());
+    }
+
+    @Test
+    void errorInGroupDoesNotStopWriter() throws SQLException {
+        writer = new GroupCommitWriter(pool, 8, 0, 100, 10_000);
+
+        Car broken = new Car("Broken", 2020, BigDecimal.ONE) {
+            @Override
+            public String getBrand() {
+                throw new StackOverflowError();
+            }
+        };
+        RuntimeException e = assertThrows(RuntimeException.class, () -> writer.insert(broken));
+        assertInstanceOf(StackOverflowError.class, e.getCause());
+
+        // Фоновый поток жив: следующая вставка проходит
+        assertEquals("Mazda", writer.insert(car("Mazda", "10.00")).getBrand());
+        assertEquals(1, countRows());
+    }
+
+    @Test
+    void insertWaitIsBounded() throws SQLException {
+        pool.close();
+        String url = "jdbc:h2:mem:group" + DATABASES.incrementAndGet() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        // Единственное соединение занято: группа не может начаться, пока мы его не вернем
+        pool = new ConnectionPool(url, "sa", "", 0, 1, 10_000, 300_000, 30_000);
+        writer = new GroupCommitWriter(pool, 8, 0, 100, 200);
+
+        try (Connection ignored = pool.getConnection()) {
+            long start = System.nanoTime();
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                    () -> writer.insert(car("Mazda", "10.00")));
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertInstanceOf(TimeoutException.class, e.getCause());
+            assertTrue(elapsedMs < 5_000, "ожидание длилось " + elapsedMs + " мс");
+        }
+    }
+
+    @Test
+    void insertAfterCloseFails() {
+        writer = new GroupCommitWriter(pool, 8, 0, 100, 10_000);
+        writer.close();
+
+        assertThrows(IllegalStateException.class, () -> writer.insert(car("Mazda", "10.00")));
+    }
+}